@@ -0,0 +1,32 @@
+#!/bin/bash
+# run the JMH suite and keep the results as results/<label>.json
+# compares against results/baseline.json when it exists, extra arguments go to JMH (e.g. a benchmark regex)
+#
+#   mvn -B package && ./run.sh baseline        # once, before a change
+#   mvn -B package && ./run.sh my-change       # after it
+
+cd "$(dirname "$0")"
+label=${1:-current}
+shift
+mkdir -p results
+java -jar target/benchmarks.jar -rf json -rff results/$label.json "$@" || exit 1
+
+if [ "$label" != baseline ] && [ -f results/baseline.json ]; then
+    python3 - results/baseline.json results/$label.json <<'PY'
+import json, sys
+def load(name):
+    rows = {}
+    for r in json.load(open(name)):
+        key = r["benchmark"].split(".")[-1] + " " + ",".join("%s=%s" % kv for kv in sorted(r.get("params", {}).items()))
+        rows[key] = (r["primaryMetric"]["score"], r["primaryMetric"]["scoreError"], r["primaryMetric"]["scoreUnit"])
+    return rows
+base, cur = load(sys.argv[1]), load(sys.argv[2])
+for key in sorted(cur):
+    score, error, unit = cur[key]
+    if key in base:
+        old = base[key][0]
+        print("%-60s %12.3f -> %12.3f %-6s (%+.1f%%, error %.3f)" % (key, old, score, unit, 100.0 * (score - old) / old, error))
+    else:
+        print("%-60s %12s -> %12.3f %s" % (key, "-", score, unit))
+PY
+fi
@@ -0,0 +1,54 @@
+package adb;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+
+/*
+ * Date: 2026-10-17
+ * Description: shared setup for the benchmarks, every site and script is built the same way on every run
+ *
+ * 1. Name: Sites
+ * 	  Input: variableCount
+ *    Output: DataManager array for the default 10-site placement, output discarded
+ *
+ * 2. Name: Script
+ * 	  Input: script text
+ *    Output: CommandReader over the text
+ * */
+final class BenchmarkSupport {
+	final static int SITECNT = 10;
+
+	private BenchmarkSupport() {
+	}
+
+	// one pipeline (and writer thread) for the whole run, setups that run per invocation reuse it
+	private final static OutputPipeline DISCARD = new OutputPipeline(new OutputStream() {
+		public void write(int b) {
+		}
+
+		public void write(byte[] b, int off, int len) {
+		}
+	}, OutputPipeline.FlushMode.SIZE, 1 << 16);
+
+	static OutputPipeline Discard() {
+		return DISCARD;
+	}
+
+	static PlacementTable Placement(int variableCount) {
+		return PlacementTable.Build(new Placement.Default(), SITECNT, variableCount);
+	}
+
+	static DataManager[] Sites(PlacementTable placement) {
+		OutputPipeline output = Discard();
+		DataManager[] DM = new DataManager[placement.siteCount + 1];
+		for (int i = 1; i <= placement.siteCount; i++) {
+			DM[i] = new DataManager(i, placement);
+			DM[i].writer = output;
+		}
+		return DM;
+	}
+
+	static CommandReader Script(String text) {
+		return CommandReader.FromStream(new ByteArrayInputStream(text.getBytes()));
+	}
+}
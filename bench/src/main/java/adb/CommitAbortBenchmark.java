@@ -0,0 +1,83 @@
+package adb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Date: 2026-10-17
+ * Description: one transaction write-locks and writes touchedVariables variables and then commits (or aborts),
+ *    while residentLocks other variables stay read-locked by long running transactions. The cost should
+ *    follow touchedVariables and not the size of the lock table.
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CommitAbortBenchmark {
+	@Param({"16", "1024", "65536"})
+	public int residentLocks;
+
+	@Param({"1", "16"})
+	public int touchedVariables;
+
+	private DataManager site;
+	private int transactionID;
+	private int timestamp;
+	private Operation[] writes;
+
+	@Setup(Level.Trial)
+	public void Setup() {
+		// even variables 2 .. 2 * residentLocks are held by residents, the touched ones come after them
+		PlacementTable placement = BenchmarkSupport.Placement(2 * (this.residentLocks + this.touchedVariables));
+		this.site = BenchmarkSupport.Sites(placement)[1];
+		for (int i = 1; i <= this.residentLocks; i++) {
+			// a handful of resident transactions, each holding many locks
+			this.site.AcquireReadLock(1 + i % 8, 2 * i);
+		}
+		this.writes = new Operation[this.touchedVariables];
+		for (int i = 0; i < this.touchedVariables; i++) {
+			int variableID = 2 * (this.residentLocks + i + 1);
+			this.writes[i] = new Operation(0, variableID, Operation.OperationType.WRITE, i, 0);
+		}
+		this.transactionID = 100;
+		this.timestamp = 0;
+	}
+
+	@Benchmark
+	public int Commit() {
+		int id = Touch();
+		this.site.Commit(id, ++this.timestamp);
+		return id;
+	}
+
+	@Benchmark
+	public int Abort() {
+		int id = Touch();
+		this.site.Abort(id);
+		return id;
+	}
+
+	private int Touch() {
+		int id = ++this.transactionID;
+		for (Operation write: this.writes) {
+			write.transactionID = id;
+			this.site.AcquireWriteLock(id, write.variableID);
+			this.site.Write(write);
+		}
+		return id;
+	}
+}
@@ -0,0 +1,140 @@
+package adb;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Date: 2026-10-17
+ * Description: deadlock detection on wait-for graphs of transactions nodes, and detection against prevention
+ *
+ * 1. Name: DetectDeadLock
+ *    Description: TransactionManager.DetectDeadLock right after a script closed one cycle through every
+ *    transaction (Ti waits for Ti+1, the last one for T1), includes aborting the victim
+ *
+ * 2. Name: CycleSearch
+ *    Description: one Tarjan pass of WaitForGraph.CycleNodes over a random graph with 2 edges per node
+ *
+ * 3. Name: Resolve
+ *    Description: the whole cycle script under each deadlock policy (adb.deadlock), from the first begin until
+ *    every transaction is blocked or aborted, returns the aborts it took
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DeadlockBenchmark {
+	@State(Scope.Thread)
+	public static class Cycle {
+		@Param({"16", "256", "2048"})
+		public int transactions;
+
+		public TransactionManager manager;
+		private String script;
+		private PlacementTable placement;
+
+		@Setup(Level.Trial)
+		public void Script() {
+			StringBuilder text = new StringBuilder();
+			for (int i = 1; i <= this.transactions; i++) {
+				text.append("begin(T").append(i).append(")\n");
+			}
+			for (int i = 1; i <= this.transactions; i++) {
+				text.append("W(T").append(i).append(",x").append(2 * i).append(",1)\n");
+			}
+			for (int i = 1; i <= this.transactions; i++) {
+				int next = i % this.transactions + 1;
+				text.append("W(T").append(i).append(",x").append(2 * next).append(",2)\n");
+			}
+			this.script = text.toString();
+			this.placement = BenchmarkSupport.Placement(2 * this.transactions);
+		}
+
+		@Setup(Level.Invocation)
+		public void Build() {
+			this.manager = new TransactionManager(BenchmarkSupport.Sites(this.placement), this.placement, BenchmarkSupport.Discard());
+			CommandReader reader = BenchmarkSupport.Script(this.script);
+			// the cycle closes on the last line, the detection the next tick would start with is left to the benchmark
+			for (int line = 0; line < 3 * this.transactions; line++) {
+				this.manager.Tick(reader);
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Policy {
+		@Param({"16", "256"})
+		public int transactions;
+
+		@Param({"DETECT", "WAITDIE", "WOUNDWAIT"})
+		public TransactionManager.DeadlockPolicy policy;
+
+		public TransactionManager manager;
+		public CommandReader reader;
+		private Cycle cycle;
+
+		@Setup(Level.Trial)
+		public void Script() {
+			this.cycle = new Cycle();
+			this.cycle.transactions = this.transactions;
+			this.cycle.Script();
+		}
+
+		@Setup(Level.Invocation)
+		public void Build() {
+			this.manager = new TransactionManager(BenchmarkSupport.Sites(this.cycle.placement), this.cycle.placement, BenchmarkSupport.Discard());
+			if (this.policy != TransactionManager.DeadlockPolicy.DETECT) {
+				this.manager.SetDeadlockPolicy(this.policy);
+			}
+			this.reader = BenchmarkSupport.Script(this.cycle.script);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Graph {
+		@Param({"16", "256", "2048"})
+		public int transactions;
+
+		public WaitForGraph graph;
+
+		@Setup(Level.Trial)
+		public void Build() {
+			SplittableRandom random = new SplittableRandom(7);
+			this.graph = new WaitForGraph();
+			for (int i = 1; i <= this.transactions; i++) {
+				this.graph.AddEdge(i, 1 + random.nextInt(this.transactions));
+				this.graph.AddEdge(i, 1 + random.nextInt(this.transactions));
+			}
+		}
+	}
+
+	@Benchmark
+	public boolean DetectDeadLock(Cycle cycle) {
+		return cycle.manager.DetectDeadLock();
+	}
+
+	@Benchmark
+	public int CycleSearch(Graph graph) {
+		return graph.graph.CycleNodes().size();
+	}
+
+	@Benchmark
+	public long Resolve(Policy policy) {
+		while (policy.manager.Tick(policy.reader)) {
+		}
+		return policy.manager.metrics.getDeadlockAborts() + policy.manager.metrics.getPreventionAborts();
+	}
+}
@@ -0,0 +1,104 @@
+package adb;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Date: 2026-10-17
+ * Description: DataManager.AcquireReadLock / AcquireWriteLock followed by the release (Abort) of the same
+ *    transaction, on one site, with hotVariables distinct variables shared by all the benchmark threads.
+ *    One hot variable is full contention, 4096 is almost none.
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class LockManagerBenchmark {
+	@Param({"1", "16", "4096"})
+	public int hotVariables;
+
+	private DataManager site;
+	private int[] hot;
+	private AtomicInteger threadSeeds;
+
+	@State(Scope.Thread)
+	public static class Client {
+		private SplittableRandom random;
+		private int nextTransaction;
+
+		@Setup(Level.Trial)
+		public void Setup(LockManagerBenchmark benchmark) {
+			int seed = benchmark.threadSeeds.incrementAndGet();
+			this.random = new SplittableRandom(seed);
+			// disjoint transaction ids per thread
+			this.nextTransaction = seed << 24;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void Setup() {
+		// even variables are on every site, so hotVariables of them fit on site 1
+		PlacementTable placement = BenchmarkSupport.Placement(this.hotVariables * 2);
+		this.site = BenchmarkSupport.Sites(placement)[1];
+		this.hot = new int[this.hotVariables];
+		for (int i = 0; i < this.hotVariables; i++) {
+			this.hot[i] = 2 * (i + 1);
+		}
+		this.threadSeeds = new AtomicInteger();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean ReadLock(Client client) {
+		return ReadCycle(client);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean ReadLockContended(Client client) {
+		return ReadCycle(client);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean WriteLock(Client client) {
+		return WriteCycle(client);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean WriteLockContended(Client client) {
+		return WriteCycle(client);
+	}
+
+	private boolean ReadCycle(Client client) {
+		int transactionID = client.nextTransaction++;
+		boolean granted = this.site.AcquireReadLock(transactionID, this.hot[client.random.nextInt(this.hot.length)]);
+		this.site.Abort(transactionID);
+		return granted;
+	}
+
+	private boolean WriteCycle(Client client) {
+		int transactionID = client.nextTransaction++;
+		boolean granted = this.site.AcquireWriteLock(transactionID, this.hot[client.random.nextInt(this.hot.length)]);
+		this.site.Abort(transactionID);
+		return granted;
+	}
+}
@@ -0,0 +1,70 @@
+package adb;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Date: 2026-10-17
+ * Description: DataManager.ReadOnly of a replicated variable with chainDepth committed versions on a site
+ *    that failed and recovered failures times before them, snapshots are spread over the whole chain
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SnapshotReadBenchmark {
+	private final static int VARIABLE = 2;
+
+	@Param({"1", "64", "4096"})
+	public int chainDepth;
+
+	@Param({"0", "64", "4096"})
+	public int failures;
+
+	private DataManager site;
+	private Operation read;
+	private SplittableRandom random;
+	private int firstCommit;
+
+	@Setup(Level.Trial)
+	public void Setup() {
+		this.site = BenchmarkSupport.Sites(BenchmarkSupport.Placement(20))[1];
+		int time = 1;
+		for (int i = 0; i < this.failures; i++) {
+			this.site.Fail(time++);
+			this.site.Recover(time++);
+		}
+		this.firstCommit = time;
+		Operation write = new Operation(0, VARIABLE, Operation.OperationType.WRITE, 0, 0);
+		for (int i = 0; i < this.chainDepth; i++) {
+			write.transactionID = i + 1;
+			write.valueToWrite = i;
+			this.site.AcquireWriteLock(write.transactionID, VARIABLE);
+			this.site.Write(write);
+			this.site.Commit(write.transactionID, time++);
+		}
+		this.read = new Operation(0, VARIABLE, Operation.OperationType.READONLY, -1, 0);
+		this.random = new SplittableRandom(42);
+	}
+
+	@Benchmark
+	public int ReadOnly() {
+		this.read.timestamp = this.firstCommit + this.random.nextInt(this.chainDepth);
+		return this.site.ReadOnly(this.read).readResult;
+	}
+}
@@ -1,77 +1,206 @@
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
+import javax.management.JMException;
 
 /*
  * Author: Zimo Li (zl2521), Jiahui Li (jl10005)
  * Date: 2019-12-08
  * Description: application starting point 
+ *    App [input [output]] runs a command script (stdin without arguments), App -load runs the LoadDriver workload
+ *    adb.engine=concurrent runs them on the ConcurrentTransactionManager: ConcurrentScript / ConcurrentLoad
  * */
 
 public class App {
 	public static void main(String args[]) {
-		DataManager[] DM = new DataManager[DataManager.SITECNT+1];
-		for(int i = 1; i <= DataManager.SITECNT; i++) {
-			DM[i] = new DataManager(i);
+		Config config;
+		PlacementTable placement;
+		try {
+			config = Config.Load();
+			placement = config.BuildPlacement();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		Site[] DM = new Site[placement.siteCount+1];
+		SiteTransport transport = null;
+		if(config.transport.equals("local")) {
+			try {
+				OpenLocal(config, placement, DM);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
+		else {
+			// every site is a SiteServer, recovered from its own log in the durable mode
+			try {
+				transport = SiteTransport.Start(config, placement, config.transport);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+			for(int i = 1; i <= placement.siteCount; i++) {
+				DM[i] = new RemoteSite(i, transport);
+			}
 		}
 		
-		BufferedWriter writer = null;
-		BufferedReader reader = null;
+		OutputPipeline writer = null;
+		CommandReader reader = null;
+		TransactionManager TM = null;
+		ConcurrentTransactionManager CTM = null;
 		
-		if (args.length == 1) {
-			String filename = args[0];
-//			String filename = "/Users/Helen/Documents/workspacejava/ADB-Replicated-Concurrency-Control-And-Recovery/test/Test6";
-
+		if (args.length == 1 && args[0].equals("-load")) {
+			// synthetic load, the report goes to stdout and the per-command output only with adb.load.echo
+			OutputStream sink = config.GetBoolean("adb.load.echo", false) ? System.out : new OutputStream() {
+				public void write(int b) {
+				}
+				public void write(byte[] b, int off, int len) {
+				}
+			};
+			writer = new OutputPipeline(sink, config.outputFlush, config.outputBufferBytes);
+			if(config.concurrentEngine) {
+				CTM = StartConcurrent(config, DM, placement, writer);
+				ConcurrentLoad load = new ConcurrentLoad(config, placement.variableCount, placement.siteCount);
+				load.Run(CTM);
+				Flush(writer);
+				load.Report(System.out);
+			} else {
+				TM = Start(config, DM, placement, writer);
+				LoadDriver driver = new LoadDriver(config, placement.variableCount, placement.siteCount);
+				driver.Run(TM);
+				Flush(writer);
+				driver.Report(System.out);
+			}
+		}
+		else {
 			try {
-				reader = new BufferedReader(new FileReader(filename));
-				writer = new BufferedWriter(new OutputStreamWriter(System.out));
-				TransactionManager TM = new TransactionManager(DM, writer);
-				TM.Run(reader);
-			} catch (FileNotFoundException e) {
-				// TODO Auto-generated catch block
+				if(args.length == 0) {
+					reader = CommandReader.FromStream(System.in);
+					writer = new OutputPipeline(System.out, config.outputFlush, config.outputBufferBytes);
+				} else if(args.length == 1) {
+					String filename = args[0];
+//					String filename = "/Users/Helen/Documents/workspacejava/ADB-Replicated-Concurrency-Control-And-Recovery/test/Test6";
+					reader = CommandReader.Open(filename);
+					writer = new OutputPipeline(System.out, config.outputFlush, config.outputBufferBytes);
+				} else {
+					String filename = args[0];
+					String outname = args[1];
+					reader = CommandReader.Open(filename);
+					File fout = new File(outname);
+					FileOutputStream fos = new FileOutputStream(fout);
+					writer = new OutputPipeline(fos, config.outputFlush, config.outputBufferBytes);
+				}
+			} catch (IOException e) {
+				// missing script or output file, nothing runs
 				e.printStackTrace();
 			}
-		} 
-		else if(args.length == 0){
-			reader = new BufferedReader(new InputStreamReader(System.in));
-			writer = new BufferedWriter(new OutputStreamWriter(System.out));
-			TransactionManager TM = new TransactionManager(DM, writer);
-			TM.Run(reader);
-		} else {
-			String filename = args[0];
-			String outname = args[1];
-		 
-			try {
-				reader = new BufferedReader(new FileReader(filename));
-				File fout = new File(outname);
-				FileOutputStream fos = new FileOutputStream(fout);
-				writer = new BufferedWriter(new OutputStreamWriter(fos));
-				TransactionManager TM = new TransactionManager(DM, writer);
+			if(writer != null && config.concurrentEngine) {
+				CTM = StartConcurrent(config, DM, placement, writer);
+				new ConcurrentScript(CTM, Locals(DM), placement, writer).Run(reader);
+			} else if(writer != null) {
+				TM = Start(config, DM, placement, writer);
 				TM.Run(reader);
-			} catch (FileNotFoundException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} 
+			}
 		}
 		
+		if(TM != null) {
+			TM.StopActors();
+			if(config.metricsDump) {
+				Metrics.Dump(TM.metrics, DM, System.err);
+			}
+		}
+		if(CTM != null && config.metricsDump) {
+			Metrics.Dump(CTM.metrics, DM, System.err);
+		}
 		try {
+			for(int i = 1; i <= placement.siteCount; i++) {
+				DM[i].Close();
+			}
+			if(transport!=null) {
+				transport.Close();
+			}
 			if(writer!=null) {
-				writer.close();
+				writer.Close();
 			}
 			if(reader!=null) {
-				reader.close();
+				reader.Close();
 			}
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
+			// the output may be incomplete, the sites are closed anyway
 			e.printStackTrace();
 		}
 		
 
 	}
+	
+	private static void OpenLocal(Config config, PlacementTable placement, Site[] DM) throws IOException {
+		for(int i = 1; i <= placement.siteCount; i++) {
+			DM[i] = new DataManager(i, placement);
+		}
+		if(config.walDirectory != null) {
+			// durable mode: rebuild every site from its checkpoint and log tail
+			long start = System.nanoTime();
+			int records = 0;
+			for(int i = 1; i <= placement.siteCount; i++) {
+				records += ((DataManager) DM[i]).AttachLog(new WriteAheadLog(new File(config.walDirectory), i, config.checkpointBytes));
+			}
+			System.err.printf("recovered %d sites from %s, %d log records replayed in %.1f ms\n",
+					placement.siteCount, config.walDirectory, records, (System.nanoTime() - start) / 1e6);
+		}
+	}
+	
+	private static ConcurrentTransactionManager StartConcurrent(Config config, Site[] DM, PlacementTable placement, OutputPipeline writer) {
+		ConcurrentTransactionManager CTM = new ConcurrentTransactionManager(Locals(DM), placement, writer);
+		if(config.metricsJmx) {
+			try {
+				Metrics.Register(CTM.metrics, DM);
+			} catch (JMException e) {
+				e.printStackTrace();
+			}
+		}
+		return CTM;
+	}
+	
+	// the concurrent engine only runs on local sites, Config makes sure of it
+	private static DataManager[] Locals(Site[] DM) {
+		DataManager[] sites = new DataManager[DM.length];
+		for(int i = 1; i < DM.length; i++) {
+			sites[i] = (DataManager) DM[i];
+		}
+		return sites;
+	}
+	
+	private static void Flush(OutputPipeline writer) {
+		try {
+			writer.Flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private static TransactionManager Start(Config config, Site[] DM, PlacementTable placement, OutputPipeline writer) {
+		TransactionManager TM = new TransactionManager(DM, placement, writer);
+		TM.readPolicy = config.readPolicy;
+		TM.concurrency = config.concurrency;
+		TM.groupCommitWindow = config.groupCommitWindow;
+		if(config.deadlockPolicy != TransactionManager.DeadlockPolicy.DETECT) {
+			TM.SetDeadlockPolicy(config.deadlockPolicy);
+		}
+		if(config.siteActors) {
+			TM.StartActors();
+		}
+		if(config.catchUpBatch > 0) {
+			TM.EnableCatchUp(config.catchUpBatch);
+		}
+		if(config.metricsJmx) {
+			try {
+				Metrics.Register(TM.metrics, DM);
+			} catch (JMException e) {
+				e.printStackTrace();
+			}
+		}
+		return TM;
+	}
 }
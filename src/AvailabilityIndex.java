@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+/*
+ * Date: 2026-10-17
+ * Description: down periods of one site as sorted [failTime, recoverTime) intervals, replaces the plain
+ *    failure / recovery history lists so staleness checks are binary searches instead of scans
+ *
+ * 1. Name: RecordFailure / RecordRecovery
+ * 	  Input: timestamp
+ *    Description: open / close a down interval, times never go backwards
+ *
+ * 2. Name: FailedBetween
+ * 	  Input: after, upTo
+ *    Output: whether the site failed at some time t with after < t <= upTo
+ *
+ * 3. Name: LastFailureAtOrBefore
+ * 	  Input: timestamp
+ *    Output: the latest failure time not after timestamp, -1 if none
+ *
+ * 4. Name: DownAt
+ * 	  Input: timestamp
+ *    Output: whether the site was down at that time
+ * */
+public class AvailabilityIndex {
+	public final static int OPEN = Integer.MAX_VALUE;
+
+	private int[] failTimes;
+	private int[] recoverTimes; // OPEN while the site is still down
+	private int size;
+
+	public AvailabilityIndex() {
+		this.failTimes = new int[4];
+		this.recoverTimes = new int[4];
+		this.size = 0;
+	}
+
+	public void RecordFailure(int timestamp) {
+		if (this.size > 0 && this.recoverTimes[this.size - 1] == OPEN) {
+			// already down
+			return;
+		}
+		if (this.size == this.failTimes.length) {
+			this.failTimes = Arrays.copyOf(this.failTimes, this.size * 2);
+			this.recoverTimes = Arrays.copyOf(this.recoverTimes, this.size * 2);
+		}
+		this.failTimes[this.size] = timestamp;
+		this.recoverTimes[this.size] = OPEN;
+		this.size++;
+	}
+
+	public void RecordRecovery(int timestamp) {
+		if (this.size > 0 && this.recoverTimes[this.size - 1] == OPEN) {
+			this.recoverTimes[this.size - 1] = timestamp;
+		}
+	}
+
+	public boolean FailedBetween(int after, int upTo) {
+		int first = FirstFailureAfter(after);
+		return first < this.size && this.failTimes[first] <= upTo;
+	}
+
+	public int LastFailureAtOrBefore(int timestamp) {
+		int first = FirstFailureAfter(timestamp);
+		return first == 0 ? -1 : this.failTimes[first - 1];
+	}
+
+	public boolean DownAt(int timestamp) {
+		int first = FirstFailureAfter(timestamp);
+		return first > 0 && this.recoverTimes[first - 1] > timestamp;
+	}
+
+	public int FailureCount() {
+		return this.size;
+	}
+
+	// position of the first interval whose failure time is strictly after timestamp
+	private int FirstFailureAfter(int timestamp) {
+		int lo = 0;
+		int hi = this.size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.failTimes[mid] <= timestamp) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
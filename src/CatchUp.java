@@ -0,0 +1,160 @@
+import java.util.ArrayDeque;
+
+/*
+ * Date: 2026-10-17
+ * Description: active catch-up of recovered sites (adb.catchup.batch > 0). A recovered site marks its replicated
+ *    copies stale, and without catch-up a copy only becomes readable again when a new write to it commits.
+ *    Here the TransactionManager streams, a few versions every tick, the committed versions an up-to-date
+ *    peer has beyond the time the site went down, the commit time of the last version shipped being the
+ *    cursor, and every copy becomes readable as soon as its last version arrived. The copies of a site are
+ *    worked through in order, a copy no peer can serve right now (peers down, stale, or write-locked by a
+ *    transaction that may still commit) goes to the back and is retried on a later tick.
+ *
+ *    Progress: the TransactionManager metrics count copies still stale and versions shipped, and a line
+ *    "site N caught up: V variables, M versions in K ticks" is printed when a site is done.
+ *
+ * 1. Name: CatchUp (constructor)
+ * 	  Input: Site array, PlacementTable, versions to ship per tick, metrics, readable copies of the TransactionManager
+ *
+ * 2. Name: SiteFailed / SiteRecovered
+ * 	  Input: siteID, time
+ *    Description: the cursor starts at the first failure since the site was last fully caught up, a site
+ *    that fails again in the middle of its catch-up starts over from that same time when it recovers
+ *
+ * 3. Name: Step
+ * 	  Input: status of the sites, output pipeline, time
+ *    Description: ship up to the per-tick budget of versions, every attempt costs at least one unit of it
+ * */
+public class CatchUp {
+	private static class Progress {
+		public int since; // failure time, versions committed after it may be missing
+		public ArrayDeque<Integer> stale;
+		public int variableCount;
+		public int cursor; // commit time of the last version shipped for the head of stale
+		public int versions;
+		public int startTime;
+	}
+
+	private Site[] DM;
+	private PlacementTable placement;
+	private int batch;
+	private ManagerMetrics metrics;
+	private ReplicaBitmap readable;
+	private Progress[] progress; // null while the site has nothing to catch up
+	private int[] failedAt;
+	private int[] commitTimes;
+	private int[] values;
+
+	public CatchUp(Site[] DM, PlacementTable placement, int batch, ManagerMetrics metrics, ReplicaBitmap readable) {
+		this.DM = DM;
+		this.placement = placement;
+		this.batch = batch;
+		this.metrics = metrics;
+		this.readable = readable;
+		this.progress = new Progress[placement.siteCount + 1];
+		this.failedAt = new int[placement.siteCount + 1];
+		this.commitTimes = new int[batch];
+		this.values = new int[batch];
+	}
+
+	public void SiteFailed(int siteID, int time) {
+		if (this.progress[siteID] == null) {
+			this.failedAt[siteID] = time;
+		}
+	}
+
+	public void SiteRecovered(int siteID, int time) {
+		Progress p = this.progress[siteID];
+		if (p != null) {
+			this.metrics.catchUpStale.add(-p.stale.size());
+		} else {
+			p = new Progress();
+			p.since = this.failedAt[siteID];
+			this.progress[siteID] = p;
+		}
+		// the recovery made every replicated copy stale again
+		p.stale = new ArrayDeque<Integer>();
+		for (int variableID : this.placement.VariablesAt(siteID)) {
+			if (this.placement.IsReplicated(variableID)) {
+				p.stale.add(variableID);
+			}
+		}
+		p.variableCount = p.stale.size();
+		p.cursor = p.since;
+		p.versions = 0;
+		p.startTime = time;
+		this.metrics.catchUpStale.add(p.stale.size());
+	}
+
+	public void Step(boolean[] siteStatus, OutputPipeline writer, int time) {
+		int budget = this.batch;
+		for (int siteID = 1; siteID <= this.placement.siteCount && budget > 0; siteID++) {
+			Progress p = this.progress[siteID];
+			if (p == null || siteStatus[siteID] == false) {
+				continue;
+			}
+			int misses = 0;
+			while (budget > 0 && p.stale.isEmpty() == false && misses < p.stale.size()) {
+				int variableID = p.stale.peekFirst();
+				int limit = budget;
+				int count = Export(variableID, siteID, p.cursor, limit, siteStatus);
+				budget -= Math.max(count, 1);
+				if (count < 0) {
+					if (this.DM[siteID].InstallVersions(variableID, 0, this.commitTimes, this.values, false) == false) {
+						// a write committed to the copy in the meantime
+						p.stale.pollFirst();
+						this.readable.Set(this.placement.Position(variableID, siteID));
+						this.metrics.catchUpStale.decrement();
+						continue;
+					}
+					// no peer can serve it now, try the next copy
+					p.stale.addLast(p.stale.pollFirst());
+					p.cursor = p.since;
+					misses++;
+					continue;
+				}
+				misses = 0;
+				// a full batch may have more behind it
+				boolean last = count < limit;
+				boolean needed = this.DM[siteID].InstallVersions(variableID, count, this.commitTimes, this.values, last);
+				p.versions += count;
+				this.metrics.catchUpVersions.add(count);
+				if (needed == false || last) {
+					p.stale.pollFirst();
+					this.readable.Set(this.placement.Position(variableID, siteID));
+					p.cursor = p.since;
+					this.metrics.catchUpStale.decrement();
+				} else {
+					p.cursor = this.commitTimes[count - 1];
+				}
+			}
+			if (p.stale.isEmpty()) {
+				writer.Text("site ");
+				writer.Int(siteID);
+				writer.Text(" caught up: ");
+				writer.Int(p.variableCount);
+				writer.Text(" variables, ");
+				writer.Int(p.versions);
+				writer.Text(" versions in ");
+				writer.Int(time - p.startTime);
+				writer.Line(" ticks");
+				this.progress[siteID] = null;
+			}
+		}
+	}
+
+	// versions of the variable newer than the cursor from the first live peer that can serve them, -1 if none can
+	private int Export(int variableID, int siteID, int cursor, int limit, boolean[] siteStatus) {
+		for (int k = this.placement.Start(variableID); k < this.placement.End(variableID); k++) {
+			int peer = this.placement.SiteAt(k);
+			if (peer == siteID || siteStatus[peer] == false) {
+				continue;
+			}
+			int count = this.DM[peer].ExportVersions(variableID, cursor, limit, this.commitTimes, this.values);
+			if (count >= 0) {
+				return count;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,47 @@
+import java.io.IOException;
+
+/*
+ * Date: 2026-10-17
+ * Description: one decoded command per tick, the fields are reused for every command. Sources are the
+ *    script parser (CommandReader) and the synthetic workload of the load driver.
+ *
+ * 1. Name: Next
+ *    Output: false when the source is exhausted
+ *    Description: decode the next command into the fields, type is NONE for a tick without a command
+ *
+ * 2. Name: Close
+ * */
+public abstract class Command {
+	public enum CommandType {
+		NONE,
+		BEGIN,
+		BEGINRO,
+		END,
+		FAIL,
+		RECOVER,
+		DUMPALL,
+		DUMPSITE,
+		DUMPITEM,
+		READ,
+		WRITE,
+		SCAN,
+		MREAD,
+		MWRITE
+	}
+
+	public CommandType type = CommandType.NONE;
+	public int transactionID;
+	public int variableID;
+	public int siteID;
+	public int value;
+	public int lastVariableID; // SCAN reads variableID to lastVariableID
+	// MREAD / MWRITE: the first count entries, values only for MWRITE
+	public int count;
+	public int[] variableIDs = new int[16];
+	public int[] values = new int[16];
+
+	public abstract boolean Next() throws IOException;
+
+	public void Close() throws IOException {
+	}
+}
@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Date: 2026-10-17
+ * Description: streaming reader of the command script. Bytes are scanned straight out of a reusable NIO buffer
+ *    and every command is decoded into the primitive fields of Command, no String is made per line.
+ *    The syntax is the one TransactionManager always accepted: spaces are ignored anywhere, "//" starts a comment,
+ *    a command is name(arguments), anything after ")" is ignored, and ids are the number after their first character.
+ *    scan(Ti,xa,xb) reads the variables xa to xb in one command, MR(Ti,xa,xb,...) and MW(Ti,xa,va,xb,vb,...)
+ *    read and write a batch of variables.
+ *    Lines end with \n, \r or \r\n like BufferedReader.readLine.
+ *
+ * 1. Name: Open / FromStream
+ * 	  Input: file name / input stream
+ *    Output: CommandReader
+ *
+ * 2. Name: Next
+ *    Output: false at the end of the input
+ *    Description: decode the next line, type is NONE for empty lines, comments and lines that are not a command,
+ *    they still count as one line (one tick) for the caller
+ *
+ * 3. Name: Close
+ * */
+public class CommandReader extends Command {
+	private final static byte[] BEGIN = "begin".getBytes();
+	private final static byte[] BEGINRO = "beginRO".getBytes();
+	private final static byte[] END = "end".getBytes();
+	private final static byte[] FAIL = "fail".getBytes();
+	private final static byte[] RECOVER = "recover".getBytes();
+	private final static byte[] DUMP = "dump".getBytes();
+	private final static byte[] READ = "R".getBytes();
+	private final static byte[] WRITE = "W".getBytes();
+	private final static byte[] SCAN = "scan".getBytes();
+	private final static byte[] MREAD = "MR".getBytes();
+	private final static byte[] MWRITE = "MW".getBytes();
+	private final static int BUFFERSIZE = 1 << 16;
+
+	private ReadableByteChannel channel;
+	private ByteBuffer buffer; // heap buffer, read through its array
+	private int position; // next unread byte in the buffer
+	private int limit;
+	private boolean endOfInput;
+	private byte[] line; // current line without spaces and comment
+	private int length;
+	private int cursor; // parse position in line
+	private boolean malformed;
+
+	private CommandReader(ReadableByteChannel channel) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(BUFFERSIZE);
+		this.position = 0;
+		this.limit = 0;
+		this.endOfInput = false;
+		this.line = new byte[256];
+	}
+
+	public static CommandReader Open(String filename) throws IOException {
+		return new CommandReader(FileChannel.open(Paths.get(filename), StandardOpenOption.READ));
+	}
+
+	public static CommandReader FromStream(InputStream in) {
+		return new CommandReader(Channels.newChannel(in));
+	}
+
+	public boolean Next() throws IOException {
+		if (this.position == this.limit && Fill() == false) {
+			return false;
+		}
+		ReadLine();
+		Decode();
+		return true;
+	}
+
+	public void Close() throws IOException {
+		this.channel.close();
+	}
+
+	// copy one line into this.line, dropping spaces and everything from "//" on
+	private void ReadLine() throws IOException {
+		this.length = 0;
+		boolean comment = false;
+		byte[] data = this.buffer.array();
+		while (true) {
+			if (this.position == this.limit && Fill() == false) {
+				return;
+			}
+			byte b = data[this.position++];
+			if (b == '\n') {
+				return;
+			}
+			if (b == '\r') {
+				if ((this.position < this.limit || Fill()) && data[this.position] == '\n') {
+					this.position++;
+				}
+				return;
+			}
+			if (comment || b == ' ') {
+				continue;
+			}
+			if (b == '/' && this.length > 0 && this.line[this.length - 1] == '/') {
+				this.length--;
+				comment = true;
+				continue;
+			}
+			if (this.length == this.line.length) {
+				byte[] grown = new byte[this.length * 2];
+				System.arraycopy(this.line, 0, grown, 0, this.length);
+				this.line = grown;
+			}
+			this.line[this.length++] = b;
+		}
+	}
+
+	private boolean Fill() throws IOException {
+		if (this.endOfInput) {
+			return false;
+		}
+		this.buffer.clear();
+		int read;
+		do {
+			read = this.channel.read(this.buffer);
+		} while (read == 0);
+		if (read < 0) {
+			this.endOfInput = true;
+			this.position = this.limit = 0;
+			return false;
+		}
+		this.position = 0;
+		this.limit = this.buffer.position();
+		return true;
+	}
+
+	private void Decode() {
+		this.type = CommandType.NONE;
+		this.malformed = false;
+		int open = IndexOf('(', 0);
+		if (open < 0) {
+			return;
+		}
+		int close = IndexOf(')', open + 1);
+		if (close < 0) {
+			return;
+		}
+		this.length = close; // arguments end at the first ')'
+		this.cursor = open + 1;
+		CommandType decoded;
+		if (NameIs(BEGIN, open)) {
+			this.transactionID = ParseID();
+			decoded = CommandType.BEGIN;
+		} else if (NameIs(BEGINRO, open)) {
+			this.transactionID = ParseID();
+			decoded = CommandType.BEGINRO;
+		} else if (NameIs(END, open)) {
+			this.transactionID = ParseID();
+			decoded = CommandType.END;
+		} else if (NameIs(FAIL, open)) {
+			this.siteID = ParseInt(',');
+			decoded = CommandType.FAIL;
+		} else if (NameIs(RECOVER, open)) {
+			this.siteID = ParseInt(',');
+			decoded = CommandType.RECOVER;
+		} else if (NameIs(DUMP, open)) {
+			if (this.cursor == this.length) {
+				decoded = CommandType.DUMPALL;
+			} else if (this.line[this.cursor] == 'x') {
+				this.variableID = ParseID();
+				decoded = CommandType.DUMPITEM;
+			} else {
+				this.siteID = ParseInt(',');
+				decoded = CommandType.DUMPSITE;
+			}
+		} else if (NameIs(READ, open)) {
+			this.transactionID = ParseID();
+			this.variableID = ParseID();
+			decoded = CommandType.READ;
+		} else if (NameIs(WRITE, open)) {
+			this.transactionID = ParseID();
+			this.variableID = ParseID();
+			this.value = ParseInt(',');
+			decoded = CommandType.WRITE;
+		} else if (NameIs(SCAN, open)) {
+			this.transactionID = ParseID();
+			this.variableID = ParseID();
+			this.lastVariableID = ParseID();
+			decoded = CommandType.SCAN;
+		} else if (NameIs(MREAD, open)) {
+			this.transactionID = ParseID();
+			this.count = 0;
+			while (this.cursor < this.length) {
+				Grow();
+				this.variableIDs[this.count++] = ParseID();
+			}
+			decoded = CommandType.MREAD;
+		} else if (NameIs(MWRITE, open)) {
+			this.transactionID = ParseID();
+			this.count = 0;
+			while (this.cursor < this.length) {
+				Grow();
+				this.variableIDs[this.count] = ParseID();
+				this.values[this.count++] = ParseInt(',');
+			}
+			decoded = CommandType.MWRITE;
+		} else {
+			return;
+		}
+		if (this.malformed == false) {
+			this.type = decoded;
+		}
+	}
+
+	private void Grow() {
+		if (this.count == this.variableIDs.length) {
+			this.variableIDs = Arrays.copyOf(this.variableIDs, this.count * 2);
+			this.values = Arrays.copyOf(this.values, this.count * 2);
+		}
+	}
+
+	private int IndexOf(int b, int from) {
+		for (int i = from; i < this.length; i++) {
+			if (this.line[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean NameIs(byte[] name, int nameLength) {
+		if (name.length != nameLength) {
+			return false;
+		}
+		for (int i = 0; i < nameLength; i++) {
+			if (this.line[i] != name[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// "T12" or "x3": skip the first character, then a number up to the next ','
+	private int ParseID() {
+		if (this.cursor >= this.length || this.line[this.cursor] == ',') {
+			this.malformed = true;
+			return 0;
+		}
+		this.cursor++;
+		return ParseInt(',');
+	}
+
+	// same rules as Integer.parseInt on the field that ends at the separator, the separator is consumed
+	private int ParseInt(int separator) {
+		int end = this.cursor;
+		while (end < this.length && this.line[end] != separator) {
+			end++;
+		}
+		int i = this.cursor;
+		this.cursor = Math.min(end + 1, this.length);
+		boolean negative = false;
+		if (i < end && (this.line[i] == '-' || this.line[i] == '+')) {
+			negative = this.line[i] == '-';
+			i++;
+		}
+		if (i == end) {
+			this.malformed = true;
+			return 0;
+		}
+		long result = 0;
+		for (; i < end; i++) {
+			int digit = this.line[i] - '0';
+			if (digit < 0 || digit > 9) {
+				this.malformed = true;
+				return 0;
+			}
+			result = result * 10 + digit;
+			if (result > (long) Integer.MAX_VALUE + 1) {
+				this.malformed = true;
+				return 0;
+			}
+		}
+		if (negative) {
+			result = -result;
+		}
+		if (result > Integer.MAX_VALUE) {
+			this.malformed = true;
+			return 0;
+		}
+		return (int) result;
+	}
+}
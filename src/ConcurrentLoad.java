@@ -0,0 +1,192 @@
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Date: 2026-10-17
+ * Description: the LoadDriver workload on the ConcurrentTransactionManager ("App -load" with adb.engine=concurrent).
+ *    Every client is a thread that runs one transaction at a time: begin, length reads / writes, end, each call
+ *    returning when it went through or the transaction got aborted. It takes the adb.load.* settings of
+ *    LoadDriver; there are no ticks, so failEvery and downTicks count finished transactions instead, and a
+ *    failed site also comes back early once every running client waits (a read of a copy on it may block
+ *    every client, and then no transaction finishes).
+ *
+ * 1. Name: ConcurrentLoad (constructor)
+ * 	  Input: Config, number of variables and sites
+ *
+ * 2. Name: Run
+ * 	  Input: ConcurrentTransactionManager
+ *    Description: start the clients and wait until every transaction finished
+ *
+ * 3. Name: Report
+ * 	  Input: report stream
+ *    Description: throughput, abort rate by cause and commit latency percentiles in wall-clock time
+ *
+ * 4. Name: Injection
+ * 	  Input: number of finished transactions
+ *    Description: failures and due recoveries, run by the client that finished the transaction
+ *
+ * 5. Name: RecoverIfStalled
+ *    Description: bring back the oldest failed site when every running client is parked in the manager
+ * */
+public class ConcurrentLoad {
+	private final static int STALLMILLIS = 10;
+
+	private int total;
+	private int clients;
+	private int length;
+	private double readRatio;
+	private double readOnlyRatio;
+	private int failEvery;
+	private int downTicks;
+	private int seed;
+	private int siteCount;
+	private int variableCount;
+	private double[] zipf;
+
+	private AtomicInteger started;
+	private AtomicInteger finished;
+	private AtomicInteger committed;
+	private AtomicInteger running; // clients still in their loop
+	private long[] latencyNanos; // indexed by commit order
+	private long elapsedNanos;
+	private long deadlockAborts;
+	private long failureAborts;
+
+	private Random injectRandom; // guarded by this
+	private boolean[] siteDown; // guarded by this
+	private ArrayDeque<int[]> recoveries; // (finished count, siteID), guarded by this
+
+	public ConcurrentLoad(Config config, int variableCount, int siteCount) {
+		this.total = config.GetInt("adb.load.transactions", 10000);
+		this.clients = config.GetInt("adb.load.clients", 16);
+		this.length = config.GetInt("adb.load.length", 4);
+		this.readRatio = config.GetDouble("adb.load.readRatio", 0.5);
+		this.readOnlyRatio = config.GetDouble("adb.load.readOnlyRatio", 0.1);
+		this.failEvery = config.GetInt("adb.load.failEvery", 0);
+		this.downTicks = config.GetInt("adb.load.downTicks", 50);
+		this.seed = config.GetInt("adb.load.seed", 1);
+		this.siteCount = siteCount;
+		this.variableCount = variableCount;
+		this.zipf = LoadDriver.ZipfTable(config, variableCount);
+
+		this.started = new AtomicInteger();
+		this.finished = new AtomicInteger();
+		this.committed = new AtomicInteger();
+		this.running = new AtomicInteger();
+		this.latencyNanos = new long[this.total];
+		this.injectRandom = new Random(this.seed);
+		this.siteDown = new boolean[siteCount + 1];
+		this.recoveries = new ArrayDeque<int[]>();
+	}
+
+	public void Run(final ConcurrentTransactionManager manager) {
+		Thread[] threads = new Thread[this.clients];
+		long start = System.nanoTime();
+		this.running.set(this.clients);
+		for (int c = 0; c < this.clients; c++) {
+			final Random random = new Random(this.seed + c);
+			threads[c] = new Thread() {
+				public void run() {
+					RunClient(manager, random);
+					running.decrementAndGet();
+				}
+			};
+			threads[c].start();
+		}
+		for (Thread thread: threads) {
+			try {
+				while (thread.isAlive()) {
+					thread.join(STALLMILLIS);
+					RecoverIfStalled(manager);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		this.elapsedNanos = System.nanoTime() - start;
+		this.deadlockAborts = manager.metrics.deadlockAborts.sum();
+		this.failureAborts = manager.metrics.siteFailureAborts.sum();
+	}
+
+	public void Report(PrintStream report) {
+		double seconds = this.elapsedNanos / 1e9;
+		int done = this.finished.get();
+		int commits = this.committed.get();
+		int aborted = done - commits;
+
+		report.printf("load: %d transactions, %d clients, concurrent engine, %.3f s%n", done, this.clients, seconds);
+		report.printf("committed %d (%.1f tx/s)%n", commits, commits / seconds);
+		report.printf("aborted %d (%.2f%%): deadlock %d, site failure %d%n", aborted, 100.0 * aborted / Math.max(1, done), this.deadlockAborts, this.failureAborts);
+		long[] nanos = Arrays.copyOf(this.latencyNanos, commits);
+		Arrays.sort(nanos);
+		report.printf("commit latency us: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+				LoadDriver.Percentile(nanos, 0.5) / 1e3, LoadDriver.Percentile(nanos, 0.9) / 1e3, LoadDriver.Percentile(nanos, 0.99) / 1e3,
+				LoadDriver.Percentile(nanos, 0.999) / 1e3, LoadDriver.Percentile(nanos, 1.0) / 1e3);
+	}
+
+	private void RunClient(ConcurrentTransactionManager manager, Random random) {
+		int transactionID;
+		while ((transactionID = this.started.incrementAndGet()) <= this.total) {
+			long begin = System.nanoTime();
+			boolean readOnly = random.nextDouble() < this.readOnlyRatio;
+			manager.Begin(transactionID, readOnly);
+			for (int i = 0; i < this.length; i++) {
+				int variableID = LoadDriver.NextVariable(this.zipf, random, this.variableCount);
+				boolean done;
+				if (readOnly || random.nextDouble() < this.readRatio) {
+					done = manager.Read(transactionID, variableID).success;
+				} else {
+					done = manager.Write(transactionID, variableID, random.nextInt(1000));
+				}
+				if (done == false) {
+					// aborted, only end() is left
+					break;
+				}
+			}
+			if (manager.Finish(transactionID)) {
+				this.latencyNanos[this.committed.getAndIncrement()] = System.nanoTime() - begin;
+			}
+			Injection(manager, this.finished.incrementAndGet());
+		}
+	}
+
+	private synchronized void Injection(ConcurrentTransactionManager manager, int count) {
+		while (this.recoveries.isEmpty() == false && this.recoveries.peekFirst()[0] <= count) {
+			int siteID = this.recoveries.pollFirst()[1];
+			this.siteDown[siteID] = false;
+			manager.Recover(siteID);
+		}
+		if (this.failEvery > 0 && count % this.failEvery == 0 && count < this.total) {
+			int up = 0;
+			for (int site = 1; site <= this.siteCount; site++) {
+				if (this.siteDown[site] == false) {
+					up++;
+				}
+			}
+			if (up == 0) {
+				return;
+			}
+			int pick = this.injectRandom.nextInt(up);
+			for (int site = 1; site <= this.siteCount; site++) {
+				if (this.siteDown[site] == false && pick-- == 0) {
+					this.siteDown[site] = true;
+					this.recoveries.addLast(new int[] {count + this.downTicks, site});
+					manager.Fail(site);
+					return;
+				}
+			}
+		}
+	}
+
+	private synchronized void RecoverIfStalled(ConcurrentTransactionManager manager) {
+		if (this.recoveries.isEmpty() == false && manager.Parked() >= this.running.get()) {
+			int siteID = this.recoveries.pollFirst()[1];
+			this.siteDown[siteID] = false;
+			manager.Recover(siteID);
+		}
+	}
+}
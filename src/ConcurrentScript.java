@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+ * Date: 2026-10-17
+ * Description: runs a command script on the ConcurrentTransactionManager (adb.engine=concurrent). Every
+ *    read-write or read-only transaction gets its own client thread that makes its reads, writes and end in
+ *    script order; a blocked call blocks only that thread. After each command the script waits until every
+ *    client with calls left is parked on a lock, then resolves deadlocks, so a script gives the same output
+ *    on every run. begin, fail, recover and the dumps run on the script thread.
+ *    scan, MR and MW are sent as one read / write per variable.
+ *
+ * 1. Name: ConcurrentScript (constructor)
+ * 	  Input: ConcurrentTransactionManager, its DataManager array, PlacementTable, writer
+ *
+ * 2. Name: Run
+ * 	  Input: command source
+ *    Description: one command at a time until the source is exhausted, then the transactions still open
+ *    are left unfinished like in TransactionManager.Run and the client threads stop
+ *
+ * 3. Name: AwaitQuiet
+ *    Description: wait until every busy client is parked in the manager
+ * */
+public class ConcurrentScript {
+	private final static int READ = 0;
+	private final static int WRITE = 1;
+	private final static int END = 2;
+
+	private ConcurrentTransactionManager manager;
+	private DataManager[] DM;
+	private PlacementTable placement;
+	private OutputPipeline writer;
+	private HashMap<Integer, Client> clients; // open transactions, script thread only
+	private ArrayList<Client> started;
+	private int busy; // clients with calls left, guarded by this
+	private boolean closed; // guarded by this
+
+	private class Client extends Thread {
+		private int transactionID;
+		private ArrayDeque<int[]> calls; // (call, variableID, value), guarded by the script
+
+		Client(int transactionID) {
+			this.transactionID = transactionID;
+			this.calls = new ArrayDeque<int[]>();
+			setDaemon(true);
+		}
+
+		public void run() {
+			while(true) {
+				int[] call;
+				synchronized(ConcurrentScript.this) {
+					while(calls.isEmpty() && !closed) {
+						try {
+							ConcurrentScript.this.wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+					if(closed) {
+						return;
+					}
+					call = calls.peekFirst();
+				}
+				if(call[0] == READ) {
+					manager.Read(transactionID, call[1]);
+				} else if(call[0] == WRITE) {
+					manager.Write(transactionID, call[1], call[2]);
+				} else {
+					manager.Finish(transactionID);
+				}
+				synchronized(ConcurrentScript.this) {
+					calls.pollFirst();
+					if(calls.isEmpty()) {
+						busy--;
+					}
+					if(call[0] == END) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	public ConcurrentScript(ConcurrentTransactionManager manager, DataManager[] DM, PlacementTable placement, OutputPipeline writer) {
+		this.manager = manager;
+		this.DM = DM;
+		this.placement = placement;
+		this.writer = writer;
+		this.clients = new HashMap<Integer, Client>();
+		this.started = new ArrayList<Client>();
+		this.busy = 0;
+		this.closed = false;
+		// only the script thread looks for deadlocks, once everyone is parked
+		manager.detectOnPark = false;
+	}
+
+	public void Run(Command reader) {
+		try {
+			while(reader.Next()) {
+				Execute(reader);
+				AwaitQuiet();
+				while(manager.DetectDeadLock()) {
+					AwaitQuiet();
+				}
+				writer.EndTick();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized(this) {
+			closed = true;
+			notifyAll();
+		}
+		manager.Close();
+		for(Client client: started) {
+			try {
+				client.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private void Execute(Command command) {
+		switch(command.type) {
+		case BEGIN:
+		case BEGINRO: {
+			manager.Begin(command.transactionID, command.type == Command.CommandType.BEGINRO);
+			Client client = new Client(command.transactionID);
+			clients.put(command.transactionID, client);
+			started.add(client);
+			client.start();
+			break;
+		}
+		case END:
+			Send(command.transactionID, END, -1, -1);
+			clients.remove(command.transactionID);
+			break;
+		case FAIL:
+			manager.Fail(command.siteID);
+			break;
+		case RECOVER:
+			manager.Recover(command.siteID);
+			break;
+		case DUMPALL:
+			for(int i = 1; i <= placement.siteCount; i++) {
+				DM[i].DumpAll();
+			}
+			break;
+		case DUMPSITE:
+			DM[command.siteID].DumpAll();
+			break;
+		case DUMPITEM:
+			for(int k = placement.Start(command.variableID); k < placement.End(command.variableID); k++) {
+				DM[placement.SiteAt(k)].DumpOne(command.variableID);
+			}
+			break;
+		case READ:
+			Send(command.transactionID, READ, command.variableID, -1);
+			break;
+		case WRITE:
+			Send(command.transactionID, WRITE, command.variableID, command.value);
+			break;
+		case SCAN:
+			for(int variableID = Math.max(command.variableID, 1); variableID <= Math.min(command.lastVariableID, placement.variableCount); variableID++) {
+				Send(command.transactionID, READ, variableID, -1);
+			}
+			break;
+		case MREAD:
+		case MWRITE:
+			for(int i = 0; i < command.count; i++) {
+				if(command.type == Command.CommandType.MWRITE) {
+					Send(command.transactionID, WRITE, command.variableIDs[i], command.values[i]);
+				} else {
+					Send(command.transactionID, READ, command.variableIDs[i], -1);
+				}
+			}
+			break;
+		default:
+			// empty line, comment or invalid command
+			break;
+		}
+	}
+
+	private synchronized void Send(int transactionID, int call, int variableID, int value) {
+		Client client = clients.get(transactionID);
+		if(client == null) {
+			// never began or already ended
+			return;
+		}
+		if(client.calls.isEmpty()) {
+			busy++;
+		}
+		client.calls.addLast(new int[] {call, variableID, value});
+		notifyAll();
+	}
+
+	// the manager does not notify the script, so the parked count is polled
+	private synchronized void AwaitQuiet() throws InterruptedException {
+		while(busy != manager.Parked()) {
+			wait(1);
+		}
+	}
+}
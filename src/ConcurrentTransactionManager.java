@@ -0,0 +1,467 @@
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Date: 2026-10-17
+ * Description: concurrent engine where many client threads issue Read / Write / Finish at once against
+ *    the same DataManager array. There is no tick here: time is a logical clock moved by Begin, Finish, Fail
+ *    and Recover. Selected with adb.engine=concurrent (local sites only): ConcurrentScript runs a command
+ *    script on it and ConcurrentLoad the synthetic workload. TransactionManager.Run stays the single-threaded
+ *    reference mode.
+ *
+ * 1. Name: ConcurrentTransactionManager (constructor)
+ * 	  Input: DataManager array for each site, PlacementTable, writer
+ *    Description: the sites are attached to one shared WaitForGraph, as in TransactionManager
+ *
+ * 2. Name: Begin
+ * 	  Input: transactionID, isReadOnly
+ *    Description: start new transaction, read-only transactions take their snapshot while no commit is in flight
+ *
+ * 3. Name: Read
+ * 	  Input: transactionID, variableID
+ *    Output: OperationResponse, success is false if the transaction got aborted
+ *    Description: block until some live replica grants the read lock (or serves the snapshot for read-only)
+ *
+ * 4. Name: Write
+ * 	  Input: transactionID, variableID, value
+ *    Output: success or not, false if the transaction got aborted
+ *    Description: block until every live replica grants the write lock, then write to all of them
+ *
+ * 5. Name: Finish
+ * 	  Input: transactionID
+ *    Output: committed or not
+ *    Description: commit on every visited site under one commit time, or release everything if aborted
+ *
+ * 6. Name: Fail / Recover
+ * 	  Input: siteID
+ *    Description: call DataManager.Fail / Recover, excluded against commits by the commit gate
+ *
+ * 7. Name: AwaitRelease
+ * 	  Input: release version seen before the failed attempt
+ *    Description: park the caller until some transaction releases locks. Unless detectOnPark is off (a driver
+ *    that calls DetectDeadLock itself), a caller whose refused request changed the wait-for graph looks for
+ *    the cycle it may have closed before parking, and again after WAITMILLIS without a release
+ *
+ * 8. Name: DetectDeadLock
+ *    Output: whether a transaction was aborted
+ *    Description: same policy as TransactionManager, Tarjan over the shared WaitForGraph, abort the youngest
+ *    transaction in any cycle
+ *
+ * 9. Name: Parked
+ *    Output: callers parked in AwaitRelease since the last release, a driver waits for every busy client to be
+ *    parked or done before it sends the next command
+ *
+ * 10. Name: Close
+ *    Description: end of the run, every parked caller returns with failure and no new one parks
+ * */
+public class ConcurrentTransactionManager {
+	private final static long WAITMILLIS = 10;
+
+	private DataManager[] DM;
+	private ConcurrentHashMap<Integer, Transaction> transactions;
+	private PlacementTable placement;
+	private AtomicInteger clock;
+	private AtomicIntegerArray failEpoch;
+	// commits hold the read side, snapshots / fail / recover hold the write side
+	private ReentrantReadWriteLock commitGate;
+	private final Object releaseMonitor = new Object();
+	private long releaseVersion;
+	private int parked; // guarded by releaseMonitor, reset by every release
+	private boolean closed; // guarded by releaseMonitor
+	private final Object detectMonitor = new Object();
+	private WaitForGraph waitGraph;
+	private TreeMap<Integer, Integer> readOnlyStarts; // guarded by itself
+	public OutputPipeline writer;
+	public ManagerMetrics metrics;
+	private long detectedVersion; // guarded by detectMonitor, wait-for graph version of the last search
+	public volatile boolean detectOnPark;
+
+	public ConcurrentTransactionManager(DataManager[] _DM, PlacementTable placement, OutputPipeline writer) {
+		this.DM = _DM;
+		this.placement = placement;
+		this.writer = writer;
+		this.transactions = new ConcurrentHashMap<Integer, Transaction>();
+		this.clock = new AtomicInteger(0);
+		this.failEpoch = new AtomicIntegerArray(placement.siteCount+1);
+		this.commitGate = new ReentrantReadWriteLock();
+		this.releaseVersion = 0;
+		this.parked = 0;
+		this.closed = false;
+		this.waitGraph = new WaitForGraph();
+		this.readOnlyStarts = new TreeMap<Integer, Integer>();
+		this.metrics = new ManagerMetrics();
+		this.detectedVersion = -1;
+		this.detectOnPark = true;
+		for(int i = 1; i <= placement.siteCount; i++) {
+			DM[i].Attach(writer, null, waitGraph);
+		}
+	}
+
+	public void Begin(int transactionID, boolean isRonly) {
+		int startTime;
+		if(isRonly) {
+			commitGate.writeLock().lock();
+			try {
+				startTime = clock.get();
+				synchronized(readOnlyStarts) {
+					Integer count = readOnlyStarts.get(startTime);
+					readOnlyStarts.put(startTime, count == null ? 1 : count + 1);
+				}
+			} finally {
+				commitGate.writeLock().unlock();
+			}
+		} else {
+			startTime = clock.incrementAndGet();
+		}
+		transactions.put(transactionID, new Transaction(startTime, isRonly));
+	}
+
+	public OperationResponse Read(int transactionID, int variableID) {
+		Transaction ts = transactions.get(transactionID);
+		Operation op = new Operation(transactionID, variableID, Operation.OperationType.READ, -1, ts.getStartTime());
+		if(ts.isReadOnly()) {
+			op.operationType = Operation.OperationType.READONLY;
+		}
+		while(true) {
+			if(ts.willAbort) {
+				ReleaseAll(transactionID, ts);
+				return new OperationResponse(false);
+			}
+			long version = ReleaseVersion();
+			if(version < 0) {
+				return new OperationResponse(false);
+			}
+			OperationResponse or = ts.isReadOnly() ? TryReadOnly(op) : TryRead(op, ts);
+			if(or != null) {
+				synchronized(this.writer) {
+					this.writer.Text("x");
+					this.writer.Int(variableID);
+					this.writer.Text(": ");
+					this.writer.Int(or.readResult);
+					this.writer.NewLine();
+				}
+				return or;
+			}
+			AwaitRelease(version);
+		}
+	}
+
+	public boolean Write(int transactionID, int variableID, int value) {
+		Transaction ts = transactions.get(transactionID);
+		Operation op = new Operation(transactionID, variableID, Operation.OperationType.WRITE, value, ts.getStartTime());
+		while(true) {
+			if(ts.willAbort) {
+				ReleaseAll(transactionID, ts);
+				return false;
+			}
+			long version = ReleaseVersion();
+			if(version < 0) {
+				return false;
+			}
+			version = TryWrite(op, ts, version);
+			if(version < 0) {
+				return true;
+			}
+			AwaitRelease(version);
+		}
+	}
+
+	public boolean Finish(int transactionID) {
+		Transaction ts = transactions.get(transactionID);
+		boolean committed = false;
+		commitGate.readLock().lock();
+		try {
+			if(!ts.willAbort) {
+				int commitTime = clock.incrementAndGet();
+				int horizon = SnapshotHorizon(commitTime);
+				for(int site = 1; site <= placement.siteCount; site++) {
+					if(ts.visitedSites.contains(site)) {
+						DM[site].SetSnapshotHorizon(horizon);
+						DM[site].Commit(transactionID, commitTime);
+					} else if(DM[site].siteStatus == DataManager.SiteStatus.UP) {
+						// drop waitlist entries left on replicas that were tried but never used
+						DM[site].Abort(transactionID);
+					}
+				}
+				committed = true;
+			}
+		} finally {
+			commitGate.readLock().unlock();
+		}
+		if(committed) {
+			writeOutcome(transactionID, " commits");
+		} else {
+			ReleaseAll(transactionID, ts);
+			writeOutcome(transactionID, " aborts");
+		}
+		if(ts.isReadOnly()) {
+			synchronized(readOnlyStarts) {
+				int count = readOnlyStarts.get(ts.getStartTime());
+				if(count == 1) {
+					readOnlyStarts.remove(ts.getStartTime());
+				} else {
+					readOnlyStarts.put(ts.getStartTime(), count - 1);
+				}
+			}
+		}
+		transactions.remove(transactionID);
+		SignalRelease();
+		return committed;
+	}
+
+	// called under the commit gate, so no read-only transaction can start below the result meanwhile
+	private int SnapshotHorizon(int commitTime) {
+		synchronized(readOnlyStarts) {
+			if(readOnlyStarts.isEmpty()) {
+				return commitTime;
+			}
+			return readOnlyStarts.firstKey();
+		}
+	}
+
+	public void Fail(int siteID) {
+		commitGate.writeLock().lock();
+		try {
+			failEpoch.incrementAndGet(siteID);
+			// after every commit so far, a version committed at the current time was still written here
+			DM[siteID].Fail(clock.incrementAndGet());
+			for(Map.Entry<Integer, Transaction> entry: transactions.entrySet()) {
+				Transaction ts = entry.getValue();
+				if(!ts.isReadOnly() && ts.visitedSites.contains(siteID)) {
+					Abort(entry.getKey(), Transaction.AbortCause.SITEFAILURE);
+				}
+			}
+		} finally {
+			commitGate.writeLock().unlock();
+		}
+		SignalRelease();
+	}
+
+	public void Recover(int siteID) {
+		commitGate.writeLock().lock();
+		try {
+			DM[siteID].Recover(clock.incrementAndGet());
+		} finally {
+			commitGate.writeLock().unlock();
+		}
+		SignalRelease();
+	}
+
+	private OperationResponse TryRead(Operation op, Transaction ts) {
+		for(int k = placement.Start(op.variableID); k < placement.End(op.variableID); k++) {
+			int siteID = placement.SiteAt(k);
+			if(DM[siteID].siteStatus == DataManager.SiteStatus.DOWN) {
+				continue;
+			}
+			int epoch = failEpoch.get(siteID);
+			if(DM[siteID].AcquireReadLock(op.transactionID, op.variableID)) {
+				OperationResponse or = DM[siteID].Read(op);
+				if(or.success) {
+					ts.visitedSites.add(siteID);
+					if(failEpoch.get(siteID) != epoch) {
+						// the site failed after granting the lock, Fail may have missed this transaction
+						Abort(op.transactionID, Transaction.AbortCause.SITEFAILURE);
+						return null;
+					}
+					return or;
+				}
+			}
+		}
+		return null;
+	}
+
+	private OperationResponse TryReadOnly(Operation op) {
+		for(int k = placement.Start(op.variableID); k < placement.End(op.variableID); k++) {
+			int siteID = placement.SiteAt(k);
+			if(DM[siteID].siteStatus == DataManager.SiteStatus.DOWN) {
+				continue;
+			}
+			OperationResponse or = DM[siteID].ReadOnly(op);
+			if(or.success) {
+				return or;
+			}
+		}
+		return null;
+	}
+
+	// -1 when the write went through, else the release version to wait past
+	private long TryWrite(Operation op, Transaction ts, long version) {
+		int start = placement.Start(op.variableID);
+		int end = placement.End(op.variableID);
+		int[] epochs = new int[end - start];
+		boolean[] granted = new boolean[end - start];
+		boolean success = true;
+		for(int i = 0; i < epochs.length; i++) {
+			int siteID = placement.SiteAt(start + i);
+			epochs[i] = failEpoch.get(siteID);
+			if(DM[siteID].siteStatus == DataManager.SiteStatus.DOWN) {
+				continue;
+			}
+			granted[i] = DM[siteID].AcquireWriteLock(op.transactionID, op.variableID);
+			success &= granted[i];
+		}
+		if(!success) {
+			// all or nothing, a blocked writer keeps no replica locked while it waits
+			boolean handedOver = false;
+			for(int i = 0; i < granted.length; i++) {
+				if(granted[i]) {
+					handedOver |= DM[placement.SiteAt(start + i)].RollbackWriteLock(op.transactionID, op.variableID);
+				}
+			}
+			if(handedOver) {
+				// a parked caller got the lock, this one waits for the next release after that
+				return SignalRelease();
+			}
+			return version;
+		}
+		for(int i = 0; i < epochs.length; i++) {
+			int siteID = placement.SiteAt(start + i);
+			if(DM[siteID].siteStatus == DataManager.SiteStatus.DOWN) {
+				continue;
+			}
+			ts.visitedSites.add(siteID);
+			DM[siteID].Write(op);
+		}
+		for(int i = 0; i < epochs.length; i++) {
+			if(failEpoch.get(placement.SiteAt(start + i)) != epochs[i]) {
+				Abort(op.transactionID, Transaction.AbortCause.SITEFAILURE);
+				return version;
+			}
+		}
+		return -1;
+	}
+
+	private void Abort(int transactionID, Transaction.AbortCause cause) {
+		Transaction ts = transactions.get(transactionID);
+		if(ts != null && !ts.willAbort) {
+			ts.willAbort = true;
+			ts.abortCause = cause;
+			if(cause == Transaction.AbortCause.DEADLOCK) {
+				metrics.deadlockAborts.increment();
+			} else {
+				metrics.siteFailureAborts.increment();
+			}
+			ReleaseAll(transactionID, ts);
+			SignalRelease();
+		}
+	}
+
+	// an aborted transaction may still be inside an operation on its own thread, so release
+	// on every site, not only the visited ones, to also drop its waitlist entries
+	private void ReleaseAll(int transactionID, Transaction ts) {
+		for(int site = 1; site <= placement.siteCount; site++) {
+			if(DM[site].siteStatus == DataManager.SiteStatus.UP) {
+				DM[site].Abort(transactionID);
+			}
+		}
+	}
+
+	// -1 once closed
+	private long ReleaseVersion() {
+		synchronized(releaseMonitor) {
+			return closed ? -1 : releaseVersion;
+		}
+	}
+
+	private long SignalRelease() {
+		synchronized(releaseMonitor) {
+			releaseVersion++;
+			// every parked caller retries
+			parked = 0;
+			releaseMonitor.notifyAll();
+			return releaseVersion;
+		}
+	}
+
+	private void AwaitRelease(long version) {
+		if(detectOnPark && DetectIfChanged()) {
+			// the victim's release woke everyone, the caller retries or sees it was the victim
+			return;
+		}
+		synchronized(releaseMonitor) {
+			if(releaseVersion != version || closed) {
+				return;
+			}
+			parked++;
+			try {
+				if(!detectOnPark) {
+					while(releaseVersion == version && !closed) {
+						releaseMonitor.wait();
+					}
+					return;
+				}
+				releaseMonitor.wait(WAITMILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if(releaseVersion != version) {
+				return;
+			}
+			// timed out without a release, it retries like a woken caller
+			parked--;
+		}
+		DetectDeadLock();
+	}
+
+	public int Parked() {
+		synchronized(releaseMonitor) {
+			return parked;
+		}
+	}
+
+	public void Close() {
+		synchronized(releaseMonitor) {
+			closed = true;
+			releaseMonitor.notifyAll();
+		}
+	}
+
+	// the last edge of a cycle is added by a refused request, so searching when the graph changed finds it
+	private boolean DetectIfChanged() {
+		synchronized(detectMonitor) {
+			if(waitGraph.Version() == detectedVersion) {
+				return false;
+			}
+			return DetectDeadLock();
+		}
+	}
+
+	public boolean DetectDeadLock() {
+		synchronized(detectMonitor) {
+			long start = System.nanoTime();
+			detectedVersion = waitGraph.Version();
+			HashSet<Integer> cycleNodes = waitGraph.CycleNodes();
+			int youngestTime = -1;
+			int abortID = -1;
+			for(int transID: cycleNodes) {
+				Transaction ts = transactions.get(transID);
+				if(ts == null || ts.willAbort) {
+					continue;
+				}
+				if(youngestTime < ts.getStartTime()) {
+					youngestTime = ts.getStartTime();
+					abortID = transID;
+				}
+			}
+			if(abortID != -1) {
+				Abort(abortID, Transaction.AbortCause.DEADLOCK);
+			}
+			metrics.detectDeadLockNanos.Record(System.nanoTime() - start);
+			return abortID != -1;
+		}
+	}
+
+	private void writeOutcome(int transactionID, String outcome) {
+		synchronized(this.writer) {
+			this.writer.Text("T");
+			this.writer.Int(transactionID);
+			this.writer.Line(outcome);
+		}
+	}
+}
@@ -0,0 +1,195 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/*
+ * Date: 2026-10-17
+ * Description: cluster topology read at startup from system properties, optionally backed by a properties file
+ *    given as -Dadb.config=<file>. Without any setting the system is the original 10 sites / 20 variables.
+ *
+ *    adb.sites       number of sites (default 10)
+ *    adb.variables   number of variables (default 20)
+ *    adb.placement   default | hash | range | <file of variableID=site,site lines> (default: default)
+ *    adb.replicas    copies per variable for hash and range placement (default 3)
+ *    adb.wal.dir     directory of the per-site write-ahead logs, the durable mode is off when unset
+ *    adb.wal.checkpointBytes   log size after which a site writes a checkpoint (default 4 MB)
+ *    adb.output.flush          tick | input | size, when output is handed to the writer thread (default tick)
+ *    adb.output.bufferBytes    output buffer size that forces a hand-over (default 64 KB)
+ *    adb.execution             serial | actor, actor runs every site on its own thread and sends replica requests
+ *                              to all sites at once (default serial)
+ *    adb.transport             local | loopback | process, where the DataManagers run: in this process, behind
+ *                              SiteServer threads reached over loopback sockets, or as one SiteServer process per
+ *                              site (default local). Pair with adb.execution=actor to talk to the sites in parallel.
+ *    adb.catchup.batch         committed versions streamed per tick from up-to-date peers to the stale copies of
+ *                              recovered sites, 0 leaves copies stale until their next committed write (default 0)
+ *    adb.read.policy           first | roundrobin | leastloaded, which readable copy a read tries first: the lowest
+ *                              site, the next one in turn per variable, or the site with the fewest transactions
+ *                              holding read locks there (default first)
+ *    adb.deadlock              detect | waitdie | woundwait, find deadlocks in the wait-for graph and abort the youngest
+ *                              transaction of a cycle, or prevent them by start time priority: a younger requester
+ *                              dies / an older requester wounds the younger holders (default detect)
+ *    adb.concurrency           2pl | occ | si, read-write transactions lock as they go (strict two-phase locking), or
+ *                              read committed values without locks, buffer their writes and validate at the end, or
+ *                              read the snapshot at their start and buffer their writes, the first of two concurrent
+ *                              writers of a variable to commit wins (snapshot isolation) (default 2pl)
+ *    adb.groupcommit           ticks a group waits after its first transaction ends, the transactions ending until
+ *                              then commit with it, one commit call per site for the group; 1 waits for the next
+ *                              tick, 0 commits every transaction at its end (default 0)
+ *    adb.engine                tick | concurrent, the single-threaded TransactionManager that runs one command per tick,
+ *                              or the ConcurrentTransactionManager with one thread per transaction of a script
+ *                              (ConcurrentScript) or per load client (ConcurrentLoad); concurrent runs on local sites
+ *                              and takes none of the adb.* settings of TransactionManager above (default tick)
+ *    adb.metrics.jmx           register the metrics as MBeans under adb:* (default false)
+ *    adb.metrics.dump          print the metrics to stderr at exit (default false)
+ *
+ * 1. Name: Load
+ *    Output: Config
+ *
+ * 2. Name: BuildPlacement
+ *    Output: PlacementTable for the configured topology
+ * */
+public class Config {
+	public final static int DEFAULT_SITECNT = 10;
+	public final static int DEFAULT_VARIABLECNT = 20;
+
+	public int siteCount;
+	public int variableCount;
+	public String placement;
+	public int replicas;
+	public String walDirectory;
+	public long checkpointBytes;
+	public OutputPipeline.FlushMode outputFlush;
+	public int outputBufferBytes;
+	public boolean siteActors;
+	public String transport;
+	public int catchUpBatch;
+	public TransactionManager.ReadPolicy readPolicy;
+	public TransactionManager.DeadlockPolicy deadlockPolicy;
+	public TransactionManager.ConcurrencyControl concurrency;
+	public int groupCommitWindow;
+	public boolean concurrentEngine;
+	public boolean metricsJmx;
+	public boolean metricsDump;
+	private Properties properties;
+
+	public Config() {
+		this.siteCount = DEFAULT_SITECNT;
+		this.variableCount = DEFAULT_VARIABLECNT;
+		this.placement = "default";
+		this.replicas = 3;
+		this.walDirectory = null;
+		this.checkpointBytes = 4 << 20;
+		this.outputFlush = OutputPipeline.FlushMode.TICK;
+		this.outputBufferBytes = 64 << 10;
+		this.siteActors = false;
+		this.transport = "local";
+		this.catchUpBatch = 0;
+		this.readPolicy = TransactionManager.ReadPolicy.FIRST;
+		this.deadlockPolicy = TransactionManager.DeadlockPolicy.DETECT;
+		this.concurrency = TransactionManager.ConcurrencyControl.LOCKING;
+		this.groupCommitWindow = 0;
+		this.concurrentEngine = false;
+		this.metricsJmx = false;
+		this.metricsDump = false;
+		this.properties = new Properties();
+	}
+
+	public static Config Load() throws IOException {
+		Config config = new Config();
+		String filename = System.getProperty("adb.config");
+		if (filename != null) {
+			FileInputStream in = new FileInputStream(filename);
+			try {
+				config.properties.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		config.properties.putAll(System.getProperties());
+		config.siteCount = config.GetInt("adb.sites", config.siteCount);
+		config.variableCount = config.GetInt("adb.variables", config.variableCount);
+		config.placement = config.Get("adb.placement", config.placement);
+		config.replicas = config.GetInt("adb.replicas", config.replicas);
+		config.walDirectory = config.Get("adb.wal.dir", null);
+		config.checkpointBytes = config.GetLong("adb.wal.checkpointBytes", config.checkpointBytes);
+		config.outputFlush = OutputPipeline.ParseMode(config.Get("adb.output.flush", "tick"));
+		config.outputBufferBytes = config.GetInt("adb.output.bufferBytes", config.outputBufferBytes);
+		config.siteActors = ParseExecution(config.Get("adb.execution", "serial"));
+		config.transport = config.Get("adb.transport", config.transport).trim();
+		config.catchUpBatch = config.GetInt("adb.catchup.batch", config.catchUpBatch);
+		config.readPolicy = TransactionManager.ReadPolicy.valueOf(config.Get("adb.read.policy", "first").trim().toUpperCase());
+		config.deadlockPolicy = TransactionManager.DeadlockPolicy.valueOf(config.Get("adb.deadlock", "detect").trim().toUpperCase());
+		config.concurrency = TransactionManager.ConcurrencyControl.Parse(config.Get("adb.concurrency", "2pl"));
+		config.groupCommitWindow = config.GetInt("adb.groupcommit", config.groupCommitWindow);
+		config.concurrentEngine = ParseEngine(config.Get("adb.engine", "tick"));
+		if (config.concurrentEngine && !config.transport.equals("local")) {
+			throw new IllegalArgumentException("adb.engine=concurrent needs adb.transport=local");
+		}
+		config.metricsJmx = config.GetBoolean("adb.metrics.jmx", config.metricsJmx);
+		config.metricsDump = config.GetBoolean("adb.metrics.dump", config.metricsDump);
+		return config;
+	}
+
+	private static boolean ParseExecution(String execution) {
+		if (execution.trim().equals("serial")) {
+			return false;
+		}
+		if (execution.trim().equals("actor")) {
+			return true;
+		}
+		throw new IllegalArgumentException("No execution " + execution);
+	}
+
+	private static boolean ParseEngine(String engine) {
+		if (engine.trim().equals("tick")) {
+			return false;
+		}
+		if (engine.trim().equals("concurrent")) {
+			return true;
+		}
+		throw new IllegalArgumentException("No engine " + engine);
+	}
+
+	public String Get(String key, String fallback) {
+		return this.properties.getProperty(key, fallback);
+	}
+
+	public int GetInt(String key, int fallback) {
+		String value = this.properties.getProperty(key);
+		return value == null ? fallback : Integer.parseInt(value.trim());
+	}
+
+	public long GetLong(String key, long fallback) {
+		String value = this.properties.getProperty(key);
+		return value == null ? fallback : Long.parseLong(value.trim());
+	}
+
+	public double GetDouble(String key, double fallback) {
+		String value = this.properties.getProperty(key);
+		return value == null ? fallback : Double.parseDouble(value.trim());
+	}
+
+	public boolean GetBoolean(String key, boolean fallback) {
+		String value = this.properties.getProperty(key);
+		return value == null ? fallback : Boolean.parseBoolean(value.trim());
+	}
+
+	public PlacementTable BuildPlacement() throws IOException {
+		Placement policy;
+		if (this.placement.equals("default")) {
+			policy = new Placement.Default();
+		} else if (this.placement.equals("hash")) {
+			policy = new Placement.Hash(this.replicas);
+		} else if (this.placement.equals("range")) {
+			policy = new Placement.Range(this.replicas, this.variableCount);
+		} else {
+			policy = new Placement.Explicit(this.placement, this.siteCount, this.variableCount, new Placement.Default());
+		}
+		return PlacementTable.Build(policy, this.siteCount, this.variableCount);
+	}
+
+	// the original 10 sites / 20 variables, used when no configuration is wanted
+	public static PlacementTable DefaultPlacement() {
+		return PlacementTable.Build(new Placement.Default(), DEFAULT_SITECNT, DEFAULT_VARIABLECNT);
+	}
+}
@@ -1,13 +1,14 @@
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
-import java.util.ListIterator;
-import java.util.Map;
+import java.util.Iterator;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /*
  * Author: Jiahui Li (jl10005)
@@ -15,7 +16,7 @@ import java.util.TreeMap;
  * Description: DataManager class to manager data sites       
  *
  * 1. Name: DataManager (constructor)
- * 	  Input: siteID
+ * 	  Input: siteID, PlacementTable
  *    
  * 2. Name: Fail
  * 	  Input: siteID
@@ -34,7 +35,7 @@ import java.util.TreeMap;
  *    
  * 6. Name: Commit
  * 	  Input: transactionID, time stamp
- *    Description: commit a transaction
+ *    Description: commit a transaction, logged if a log is attached
  *    Side Effects: call ReassignLocks
  *    
  * 7. Name: Abort
@@ -57,10 +58,10 @@ import java.util.TreeMap;
  *    Output: can get write lock or not
  *    Description: check whether the transaction can get the write lock for the variable
  *      
- * 11. Name: AcquireWriteLock
+ * 11. Name: AcquireWriteLock / RollbackWriteLock
  * 	  Input: transactionID, variableID
- *    Output: successfully got write lock or not
- *    Description: try to get write lock
+ *    Output: successfully got write lock or not / a queued transaction got the lock or not
+ *    Description: try to get write lock / undo a write lock that did not get every replica
  *    
  * 12. Name: Read
  * 	  Input: operation
@@ -78,6 +79,7 @@ import java.util.TreeMap;
  *    Description: execute write
  *    
  * 15. Name: ReassignLocks
+ * 	   Input: released variables
  *     Description: check waiting transaction can get locks or not after some transactions committed or aborted
  *    
  * 16. Name: VTConflict
@@ -93,24 +95,91 @@ import java.util.TreeMap;
  * 18. Name: GenWaitGraph
  *    Output: wait graph
  *    Description: generate waiting graphs for all the transactions based on the locking-holding information
+ *    
+ * 19. Name: LockAll / UnlockAll
+ *    Description: take / release every stripe
+ *    
+ * 20. Name: NotifyVariable / NotifySite
+ * 	  Input: variableID / none
+ *    Description: tell the listener a blocked operation may go through
+ *    
+ * 21. Name: UpdateWaitEdges
+ * 	  Input: variableID
+ *    Description: update the wait-for edges of a variable in the WaitForGraph
+ *    
+ * 22. Name: ReleaseLocks
+ * 	  Input: transactionID
+ *    Output: variables whose holders or waitlist changed
+ *    Description: release the locks and requests of a transaction
+ *    
+ * 23. Name: SetSnapshotHorizon
+ * 	  Input: start time of the oldest read-only transaction
+ *    Description: drop versions no snapshot can read
+ *    
+ * 24. Name: AttachLog / CloseLog
+ * 	  Input: WriteAheadLog / none
+ *    Output: number of log records replayed / none
+ *    Description: recover from the log, then log every commit
+ *    
+ * 25. Name: DescribeContention
+ * 	  Input: number of variables to list
+ *    Output: the most contended variables
+ *    
+ * 26. Name: SiteID / Attach / Close
+ *    Description: rest of the Site interface
+ *    
+ * 27. Name: ExportVersions
+ * 	  Input: variableID, cursor, most versions, arrays to fill
+ *    Output: number of versions newer than the cursor, -1 if the copy cannot serve a catch-up
+ *    
+ * 28. Name: InstallVersions
+ * 	  Input: variableID, number of versions, commitTimes, values, last batch or not
+ *    Output: copy still needs catching up or not
+ *    
+ * 29. Name: Blockers
+ * 	  Input: transactionID, first and last variableID, buffer
+ *    Output: number of transactions the transaction waits behind
+ *    
+ * 30. Name: ReadCommitted
+ * 	  Input: operation
+ *    Output: OperationResponse
+ *    Description: read the latest committed value without a lock
+ *    
+ * 31. Name: AcquireRangeReadLock
+ * 	  Input: transactionID, first and last variableID
+ *    Output: every lock of the range granted or not
+ *    Description: block locks for whole blocks, read locks at the edges
+ *    
+ * 32. Name: ReadRange
+ * 	  Input: transactionID, first and last variableID, arrays to fill
+ *    Output: number of variables read, -1 if the site is down
+ *    
+ * 33. Name: ReadBatch
+ * 	  Input: transactionID, variableIDs, count, arrays to fill
+ *    Output: number of variables read, -1 if the site is down
+ *    
+ * 34. Name: WriteBatch / UndoBatch
+ * 	  Input: transactionID, variableIDs, values, count / transactionID
+ *    Output: every write applied or not / none
+ *    Description: lock and write a batch, all or nothing / undo the last batch
+ *    
+ * 35. Name: CommitGroup
+ * 	  Input: transactionIDs, count, time stamp
+ *    Description: commit transactions together, one fsync
+ *    
+ * 36. Name: CancelWaiting
+ * 	  Input: transactionID
+ *    Description: drop the queued requests of a transaction
+ *    
+ * Concurrency: each variable is guarded by its stripe lock, whole-site operations take every stripe
  * */
 
-public class DataManager {
+public class DataManager implements Site {
 	public enum SiteStatus {
 		UP,
 		DOWN
 	}
 	
-	public class CommittedValues {
-		public int value;
-		public int commitTime;
-		
-		public CommittedValues(int value, int commitTime) {
-			this.value = value;
-			this.commitTime = commitTime;
-		}
-	}
-	
 	public enum LockType {
 		READ,
 		WRITE,
@@ -129,102 +198,202 @@ public class DataManager {
 	
 	public class VariableLockNode {
 		public LockType lockType;
-		public HashSet<Integer> transactionIDs;
-		public List<TransactionLockNode> waitlist;
+		public IntSet transactionIDs;
+		public ArrayDeque<TransactionLockNode> waitlist;
+		public long queued; // requests ever queued on the variable, for the contention report
+		public boolean upgraded; // the write lock holder held a read lock before, a rollback gives it back
 				
 		public VariableLockNode(LockType lockType) {
 			this.lockType = lockType;
-			this.transactionIDs = new HashSet<Integer>();
-			this.waitlist = new ArrayList<TransactionLockNode>();
+			this.transactionIDs = new IntSet();
+			this.waitlist = new ArrayDeque<TransactionLockNode>();
+			this.queued = 0;
+			this.upgraded = false;
 		}
 	}
 	
-	public final static int VARIABLECNT = 20;
-	public final static int SITECNT = 10;
+	// read locks of a scan on a whole block of slots
+	public class RangeLockNode {
+		public IntSet transactionIDs;
+		public IntSet waitlist;
+		
+		public RangeLockNode() {
+			this.transactionIDs = new IntSet();
+			this.waitlist = new IntSet();
+		}
+	}
+	
+	public final static int STRIPECNT = 16;
+	public final static int BLOCKSIZE = 64;
+	private final static int[] NOEDGES = new int[0];
 	
 	public int siteID;
-	public SiteStatus siteStatus;
-	public List<Integer> failureHistory;
-	public List<Integer> recoveryHistory;
-	public BufferedWriter writer;
-	private TreeMap<Integer, Integer> uncommitted;
-	private TreeMap<Integer, List<CommittedValues>> committed;
-	private HashMap<Integer, Boolean> upToDate;
-	
-	private HashMap<Integer, VariableLockNode> lockTable;
-	private HashMap<Integer, Set<Integer>> transactionsToVariables;
-	
-	public DataManager(int siteID) {
+	public volatile SiteStatus siteStatus;
+	public AvailabilityIndex availability; // failure and recovery history
+	public OutputPipeline writer;
+	public LockEventListener listener;
+	public WaitForGraph waitGraph;
+	public SiteMetrics metrics;
+	private PlacementTable placement;
+	// variables held by this site in ascending order, the tables below are indexed by slot in this array
+	private int[] variables;
+	private int[] uncommitted;
+	// null until the variable is first committed on this site, the initial version is variableID * 10 at time -1
+	private VersionChain[] committed;
+	// start time of the oldest snapshot that can still be read, older versions are pruned on commit
+	private volatile int snapshotHorizon;
+	private boolean[] upToDate;
+	
+	// null until the variable is locked for the first time
+	private VariableLockNode[] lockTable;
+	// every variable a transaction holds or waits for on this site
+	private ConcurrentHashMap<Integer, IntSet> transactionLocks;
+	private ConcurrentHashMap<Integer, Set<Integer>> transactionsToVariables;
+	// (variableID, previous value, 1 if written before) of the last WriteBatch of a transaction, changed with every stripe held
+	private HashMap<Integer, int[]> batchUndo;
+	private int[][] waitEdges;
+	// null until a scan locks the block, changed with every stripe held
+	private RangeLockNode[] rangeTable;
+	// every block a transaction holds or waits for on this site
+	private ConcurrentHashMap<Integer, IntSet> transactionRanges;
+	private final ReentrantLock[] stripes;
+	private WriteAheadLog log; // null unless the durable mode is on
+	
+	public DataManager(int siteID, PlacementTable placement) {
 		this.siteID = siteID;
 		this.siteStatus = SiteStatus.UP;
-		this.failureHistory = new ArrayList<Integer>();
-		this.recoveryHistory = new ArrayList<Integer>();
-		this.uncommitted = new TreeMap<Integer, Integer>();
-		this.committed = new TreeMap<Integer, List<CommittedValues>>();
-		this.upToDate = new HashMap<Integer, Boolean>();
-		this.lockTable = new HashMap<Integer, VariableLockNode>();
-		this.transactionsToVariables = new HashMap<Integer, Set<Integer>>();
+		this.availability = new AvailabilityIndex();
+		this.metrics = new SiteMetrics(this);
+		this.placement = placement;
+		this.variables = placement.VariablesAt(siteID);
+		int count = this.variables.length;
+		this.uncommitted = new int[count];
+		this.committed = new VersionChain[count];
+		this.snapshotHorizon = Integer.MIN_VALUE;
+		this.upToDate = new boolean[count];
+		this.lockTable = new VariableLockNode[count];
+		this.transactionLocks = new ConcurrentHashMap<Integer, IntSet>();
+		this.transactionsToVariables = new ConcurrentHashMap<Integer, Set<Integer>>();
+		this.batchUndo = new HashMap<Integer, int[]>();
+		this.waitEdges = new int[count][];
+		this.rangeTable = new RangeLockNode[(count + BLOCKSIZE - 1) / BLOCKSIZE];
+		this.transactionRanges = new ConcurrentHashMap<Integer, IntSet>();
+		this.stripes = new ReentrantLock[STRIPECNT];
+		for (int i = 0; i < STRIPECNT; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
 		
-		for (int i = 1; i <= VARIABLECNT; i++) {
-			if ((i % 2 == 0) || (1 + (i % 10) == this.siteID)) {
-				this.committed.put(i, new ArrayList<CommittedValues>());
-				this.committed.get(i).add(new CommittedValues(i*10, -1));
-				this.upToDate.put(i, true);
-				// copy all values to uncommitted table for possible modification
-				this.uncommitted.put(i, i*10);
-			}
+		for (int slot = 0; slot < count; slot++) {
+			this.upToDate[slot] = true;
+			// copy all values to uncommitted table for possible modification
+			this.uncommitted[slot] = this.variables[slot] * 10;
 		}
 	}
 	
+	public int SiteID() {
+		return this.siteID;
+	}
+	
+	public void Attach(OutputPipeline writer, LockEventListener listener, WaitForGraph waitGraph) {
+		this.writer = writer;
+		this.listener = listener;
+		this.waitGraph = waitGraph;
+	}
+	
 	public void Fail(int timestamp) {
-		this.siteStatus = SiteStatus.DOWN;
-		this.uncommitted.clear();
-		this.upToDate.clear();
-		this.lockTable.clear();
-		this.transactionsToVariables.clear();
-		this.failureHistory.add(timestamp);
+		LockAll();
+		try {
+			this.siteStatus = SiteStatus.DOWN;
+			Arrays.fill(this.upToDate, false);
+			ClearWaitEdges();
+			Arrays.fill(this.lockTable, null);
+			Arrays.fill(this.rangeTable, null);
+			this.transactionLocks.clear();
+			this.transactionRanges.clear();
+			this.transactionsToVariables.clear();
+			this.batchUndo.clear();
+			this.availability.RecordFailure(timestamp);
+			NotifySite();
+		} finally {
+			UnlockAll();
+		}
 	}
 	
 	public void Recover(int timestamp) {
-		this.siteStatus = SiteStatus.UP;
-		this.recoveryHistory.add(timestamp);
+		long lsn = -1;
+		LockAll();
+		try {
+			this.siteStatus = SiteStatus.UP;
+			this.availability.RecordRecovery(timestamp);
 		
-		for (Map.Entry<Integer, List<CommittedValues>> entry: this.committed.entrySet()) {
-			// copy latest values to uncommitted table for possible modification
-			this.uncommitted.put(entry.getKey(), entry.getValue().get(0).value);
-			if (entry.getKey() % 2 == 0) {
-				this.upToDate.put(entry.getKey(), false);
+			for (int slot = 0; slot < this.variables.length; slot++) {
+				// copy latest values to uncommitted table for possible modification
+				this.uncommitted[slot] = LatestValue(slot);
+				// a replicated copy may have missed writes while the site was down
+				this.upToDate[slot] = (this.placement.IsReplicated(this.variables[slot]) == false);
 			}
-			else {
-				this.upToDate.put(entry.getKey(), true);
+			if (this.log != null) {
+				lsn = this.log.AppendRecover();
 			}
+			NotifySite();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			UnlockAll();
 		}
+		SyncLog(lsn);
 	}
 	
 	public void DumpAll() {
-		writeLine(String.format("site %d - ", this.siteID));
-		for (Map.Entry<Integer, List<CommittedValues>> entry: this.committed.entrySet()) {
-			writeLine(String.format("x%d: %d, ", entry.getKey(), entry.getValue().get(0).value));
+		LockAll();
+		try {
+			synchronized (this.writer) {
+				this.writer.Text("site ");
+				this.writer.Int(this.siteID);
+				this.writer.Text(" - ");
+				for (int slot = 0; slot < this.variables.length; slot++) {
+					this.writer.Text("x");
+					this.writer.Int(this.variables[slot]);
+					this.writer.Text(": ");
+					this.writer.Int(LatestValue(slot));
+					this.writer.Text(", ");
+				}
+				this.writer.Text("\n");
+			}
+		} finally {
+			UnlockAll();
 		}
-		writeLine(String.format("\n"));
 	}
 	
 	public void DumpOne(int variableID) {
-		writeLine(String.format("site %d - x%d: %d\n", this.siteID, this.committed.get(variableID).get(0)));
+		LockAll();
+		try {
+			synchronized (this.writer) {
+				this.writer.Text("site ");
+				this.writer.Int(this.siteID);
+				this.writer.Text(" - x");
+				this.writer.Int(variableID);
+				this.writer.Text(": ");
+				this.writer.Int(LatestValue(Slot(variableID)));
+				this.writer.Text("\n");
+			}
+		} finally {
+			UnlockAll();
+		}
 	}
 	
 	private boolean ReadLockCheck(int transactionID, int variableID) {
-		if (this.lockTable.containsKey(variableID) == false) {
+		VariableLockNode vln = this.lockTable[Slot(variableID)];
+		if (vln == null) {
 			return true;
 		}
-		VariableLockNode vln = this.lockTable.get(variableID);
-		if (vln.transactionIDs.contains(transactionID)) {
+		if (vln.transactionIDs.Contains(transactionID)) {
 			return true;
 		}
 		if (vln.lockType == LockType.WRITE) {
 			return false;
 		}
-		for (TransactionLockNode tln: this.lockTable.get(variableID).waitlist) {
+		for (TransactionLockNode tln: vln.waitlist) {
 			if (tln.transactionID != transactionID && tln.lockType != LockType.READ) {
 				return false;
 			}
@@ -233,42 +402,209 @@ public class DataManager {
 	}
 	
 	public boolean AcquireReadLock(int transactionID, int variableID) {
-		if (this.upToDate.get(variableID) == false) {
-			return false;
+		ReentrantLock stripe = StripeOf(variableID);
+		stripe.lock();
+		try {
+			if (this.siteStatus == SiteStatus.DOWN || this.upToDate[Slot(variableID)] == false) {
+				return false;
+			}
+			return ReadLock(transactionID, variableID);
+		} finally {
+			stripe.unlock();
 		}
+	}
+	
+	// grant or queue the read lock, the caller holds the stripe of the variable and checked the copy is readable
+	private boolean ReadLock(int transactionID, int variableID) {
 		if (ReadLockCheck(transactionID, variableID)) {
-			if (this.lockTable.containsKey(variableID) == false) {
-				this.lockTable.put(variableID, new VariableLockNode(LockType.READ));
-			}
-			if (this.lockTable.get(variableID).lockType == LockType.IDLE) {
-				this.lockTable.get(variableID).lockType = LockType.READ;
+			VariableLockNode vln = LockNode(variableID, LockType.READ);
+			if (vln.lockType == LockType.IDLE) {
+				vln.lockType = LockType.READ;
 			}
-			this.lockTable.get(variableID).transactionIDs.add(transactionID);
+			vln.transactionIDs.Add(transactionID);
+			IndexLock(transactionID, variableID);
+			UpdateWaitEdges(variableID);
+			this.metrics.locksGranted.increment();
 			return true;
 		}
 		else {
-			for (TransactionLockNode tln: this.lockTable.get(variableID).waitlist) {
+			VariableLockNode vln = this.lockTable[Slot(variableID)];
+			for (TransactionLockNode tln: vln.waitlist) {
 				if (tln.transactionID == transactionID && tln.lockType == LockType.READ) {
 					return false;
 				}
 			}
-			this.lockTable.get(variableID).waitlist.add(new TransactionLockNode(transactionID, LockType.READ));
+			vln.waitlist.add(new TransactionLockNode(transactionID, LockType.READ));
+			RecordQueued(vln);
+			IndexLock(transactionID, variableID);
+			UpdateWaitEdges(variableID);
 			return false;
 		}
 	}
 	
+	public boolean AcquireRangeReadLock(int transactionID, int first, int last) {
+		LockAll();
+		try {
+			if (this.siteStatus == SiteStatus.DOWN) {
+				return false;
+			}
+			boolean all = true;
+			int end = FirstSlotAfter(last);
+			int slot = FirstSlotAfter(first - 1);
+			while (slot < end) {
+				int block = slot / BLOCKSIZE;
+				int blockEnd = Math.min((block + 1) * BLOCKSIZE, this.variables.length);
+				if (slot == block * BLOCKSIZE && blockEnd <= end) {
+					// one lock for the whole block
+					all &= RangeLock(transactionID, block);
+					slot = blockEnd;
+					continue;
+				}
+				// a stale copy is read on another site
+				if (this.upToDate[slot]) {
+					all &= ReadLock(transactionID, this.variables[slot]);
+				}
+				slot++;
+			}
+			return all;
+		} finally {
+			UnlockAll();
+		}
+	}
+	
+	public int ReadRange(int transactionID, int first, int last, int[] variableIDs, int[] values) {
+		LockAll();
+		try {
+			if (this.siteStatus == SiteStatus.DOWN) {
+				return -1;
+			}
+			int count = 0;
+			for (int slot = FirstSlotAfter(first - 1); slot < FirstSlotAfter(last); slot++) {
+				RangeLockNode rln = this.rangeTable[slot / BLOCKSIZE];
+				VariableLockNode vln = this.lockTable[slot];
+				boolean locked = (rln != null && rln.transactionIDs.Contains(transactionID))
+						|| (vln != null && vln.transactionIDs.Contains(transactionID));
+				if (this.upToDate[slot] && locked && count < variableIDs.length) {
+					variableIDs[count] = this.variables[slot];
+					// from memory like Read, a write of the transaction itself is seen
+					values[count] = this.uncommitted[slot];
+					count++;
+				}
+			}
+			return count;
+		} finally {
+			UnlockAll();
+		}
+	}
+	
+	// the read lock on a whole block, granted when no other transaction holds or waits for a write lock inside it
+	private boolean RangeLock(int transactionID, int block) {
+		if (this.rangeTable[block] == null) {
+			this.rangeTable[block] = new RangeLockNode();
+		}
+		RangeLockNode rln = this.rangeTable[block];
+		if (rln.transactionIDs.Contains(transactionID)) {
+			return true;
+		}
+		IntSet ranges = this.transactionRanges.get(transactionID);
+		if (ranges == null) {
+			ranges = new IntSet();
+			this.transactionRanges.put(transactionID, ranges);
+		}
+		ranges.Add(block);
+		if (BlockWriters(transactionID, block, null) == 0) {
+			rln.waitlist.Remove(transactionID);
+			rln.transactionIDs.Add(transactionID);
+			this.metrics.locksGranted.increment();
+			UpdateBlockWaitEdges(block);
+			return true;
+		}
+		if (rln.waitlist.Add(transactionID)) {
+			this.metrics.locksQueued.increment();
+			UpdateBlockWaitEdges(block);
+		}
+		return false;
+	}
+	
+	// queued block read locks whose block has no other writer left, holding or queued, called when a lock inside it went away
+	private void GrantRange(int block) {
+		RangeLockNode rln = this.rangeTable[block];
+		if (rln == null || rln.waitlist.IsEmpty()) {
+			return;
+		}
+		boolean granted = false;
+		for (int i = rln.waitlist.Size() - 1; i >= 0; i--) {
+			int transactionID = rln.waitlist.Get(i);
+			if (BlockWriters(transactionID, block, null) == 0) {
+				rln.waitlist.Remove(transactionID);
+				rln.transactionIDs.Add(transactionID);
+				granted = true;
+			}
+		}
+		if (granted) {
+			UpdateBlockWaitEdges(block);
+			// the scan waiting for it is parked on the variables of its range, the block lies inside that range
+			NotifyVariable(this.variables[block * BLOCKSIZE]);
+		}
+	}
+	
+	// number of write locks inside the block held or waited for by other transactions, their holders and waiters
+	// added to found if any; like ReadLockCheck a reader queues behind waiting writers, except on a variable it holds
+	private int BlockWriters(int transactionID, int block, IntSet found) {
+		int count = 0;
+		for (int slot = block * BLOCKSIZE; slot < Math.min((block + 1) * BLOCKSIZE, this.variables.length); slot++) {
+			VariableLockNode vln = this.lockTable[slot];
+			if (vln == null || vln.transactionIDs.Contains(transactionID)) {
+				continue;
+			}
+			if (vln.lockType == LockType.WRITE) {
+				count++;
+				if (found != null) {
+					found.Add(vln.transactionIDs.Get(0));
+				}
+			}
+			for (TransactionLockNode tln: vln.waitlist) {
+				if (tln.transactionID != transactionID && tln.lockType != LockType.READ) {
+					count++;
+					if (found != null) {
+						found.Add(tln.transactionID);
+					}
+				}
+			}
+		}
+		return count;
+	}
+	
+	// whether no other transaction holds the read lock on the block of the slot, checked before any write lock is granted
+	private boolean RangeAllows(int transactionID, int slot) {
+		RangeLockNode rln = this.rangeTable[slot / BLOCKSIZE];
+		if (rln == null || rln.transactionIDs.IsEmpty()) {
+			return true;
+		}
+		return rln.transactionIDs.Size() == 1 && rln.transactionIDs.Contains(transactionID);
+	}
+	
+	// first slot holding a variable greater than the given one
+	private int FirstSlotAfter(int variableID) {
+		int slot = Arrays.binarySearch(this.variables, variableID);
+		return slot < 0 ? -slot - 1 : slot + 1;
+	}
+	
 	private boolean WriteLockCheck(int transactionID, int variableID) {
-		if (this.lockTable.containsKey(variableID) == false) {
+		VariableLockNode vln = this.lockTable[Slot(variableID)];
+		if (vln == null) {
 			return true;
 		}
-		VariableLockNode vln = this.lockTable.get(variableID);
-		if (vln.transactionIDs.contains(transactionID) && vln.lockType == LockType.WRITE) {
+		if (vln.transactionIDs.Contains(transactionID) && vln.lockType == LockType.WRITE) {
 			return true;
 		}
-		if ((vln.lockType == LockType.IDLE || (vln.lockType == LockType.READ && vln.transactionIDs.size() == 1 && vln.transactionIDs.contains(transactionID))) == false) {
+		if ((vln.lockType == LockType.IDLE || (vln.lockType == LockType.READ && vln.transactionIDs.Size() == 1 && vln.transactionIDs.Contains(transactionID))) == false) {
 			return false;
 		}
-		for (TransactionLockNode tln: this.lockTable.get(variableID).waitlist) {
+		if (RangeAllows(transactionID, Slot(variableID)) == false) {
+			return false;
+		}
+		for (TransactionLockNode tln: vln.waitlist) {
 			if (tln.transactionID != transactionID) {
 				return false;
 			}
@@ -277,163 +613,731 @@ public class DataManager {
 	}
 	
 	public boolean AcquireWriteLock(int transactionID, int variableID) {
+		ReentrantLock stripe = StripeOf(variableID);
+		stripe.lock();
+		try {
+			if (this.siteStatus == SiteStatus.DOWN) {
+				return false;
+			}
+			return WriteLock(transactionID, variableID);
+		} finally {
+			stripe.unlock();
+		}
+	}
+	
+	// grant or queue the write lock, the caller holds the stripe of the variable
+	private boolean WriteLock(int transactionID, int variableID) {
 		if (WriteLockCheck(transactionID, variableID)) {
-			if (this.lockTable.containsKey(variableID) == false) {
-				this.lockTable.put(variableID, new VariableLockNode(LockType.WRITE));
+			VariableLockNode vln = LockNode(variableID, LockType.WRITE);
+			if (vln.lockType != LockType.WRITE || vln.transactionIDs.Contains(transactionID) == false) {
+				vln.upgraded = (vln.lockType == LockType.READ);
 			}
-			this.lockTable.get(variableID).lockType = LockType.WRITE;
-			this.lockTable.get(variableID).transactionIDs.add(transactionID);
+			vln.lockType = LockType.WRITE;
+			vln.transactionIDs.Add(transactionID);
+			IndexLock(transactionID, variableID);
+			UpdateWaitEdges(variableID);
+			this.metrics.locksGranted.increment();
 			return true;
 		}
 		else {
-			for (TransactionLockNode tln: this.lockTable.get(variableID).waitlist) {
+			VariableLockNode vln = this.lockTable[Slot(variableID)];
+			for (TransactionLockNode tln: vln.waitlist) {
 				if (tln.transactionID == transactionID && tln.lockType == LockType.WRITE) {
 					return false;
 				}
 			}
-			this.lockTable.get(variableID).waitlist.add(new TransactionLockNode(transactionID, LockType.WRITE));
+			vln.waitlist.add(new TransactionLockNode(transactionID, LockType.WRITE));
+			RecordQueued(vln);
+			IndexLock(transactionID, variableID);
+			UpdateWaitEdges(variableID);
 			return false;
 		}
 	}
 	
-	public OperationResponse Read(Operation operation) {
-		if (this.upToDate.get(operation.variableID) == false) {
-			return new OperationResponse(false);
+	public int ReadBatch(int transactionID, int[] variableIDs, int count, int[] read, int[] values) {
+		LockAll();
+		try {
+			if (this.siteStatus == SiteStatus.DOWN) {
+				return -1;
+			}
+			int done = 0;
+			for (int i = 0; i < count; i++) {
+				int slot = Slot(variableIDs[i]);
+				if (this.upToDate[slot] && ReadLock(transactionID, variableIDs[i])) {
+					read[done] = i;
+					// from memory like Read, a write of the transaction itself is seen
+					values[done] = this.uncommitted[slot];
+					done++;
+				}
+			}
+			return done;
+		} finally {
+			UnlockAll();
+		}
+	}
+	
+	public boolean WriteBatch(int transactionID, int[] variableIDs, int[] values, int count) {
+		LockAll();
+		try {
+			if (this.siteStatus == SiteStatus.DOWN) {
+				return false;
+			}
+			boolean all = true;
+			for (int i = 0; i < count; i++) {
+				// every refused lock stays queued, like a single write sent to every replica
+				all &= WriteLock(transactionID, variableIDs[i]);
+			}
+			if (all == false) {
+				for (int i = 0; i < count; i++) {
+					Rollback(transactionID, variableIDs[i]);
+				}
+				return false;
+			}
+			int[] undo = new int[3 * count];
+			for (int i = 0; i < count; i++) {
+				int slot = Slot(variableIDs[i]);
+				Set<Integer> written = this.transactionsToVariables.get(transactionID);
+				undo[3 * i] = variableIDs[i];
+				undo[3 * i + 1] = this.uncommitted[slot];
+				undo[3 * i + 2] = (written != null && written.contains(variableIDs[i])) ? 1 : 0;
+				Apply(transactionID, variableIDs[i], values[i]);
+			}
+			this.batchUndo.put(transactionID, undo);
+			return true;
+		} finally {
+			UnlockAll();
 		}
-		if (this.lockTable.containsKey(operation.variableID) == false || this.lockTable.get(operation.variableID).transactionIDs.contains(operation.transactionID) == false) {
-			writeLine(String.format("Error: transaction performs read before acquiring read locks\n"));
-			return new OperationResponse(false);
+	}
+	
+	public void UndoBatch(int transactionID) {
+		LockAll();
+		try {
+			int[] undo = this.batchUndo.remove(transactionID);
+			if (undo == null) {
+				return;
+			}
+			// backwards, a variable written twice in the batch gets its value from before the batch
+			for (int i = undo.length - 3; i >= 0; i -= 3) {
+				int variableID = undo[i];
+				this.uncommitted[Slot(variableID)] = undo[i + 1];
+				Set<Integer> written = this.transactionsToVariables.get(transactionID);
+				if (undo[i + 2] == 0 && written != null) {
+					written.remove(variableID);
+					if (written.isEmpty()) {
+						this.transactionsToVariables.remove(transactionID);
+					}
+				}
+				// a lock held for an earlier write stays
+				Rollback(transactionID, variableID);
+			}
+		} finally {
+			UnlockAll();
 		}
-		else {
-			// must read from memory to ensure read-your-writes principal
-			int value = this.uncommitted.get(operation.variableID);
-			return new OperationResponse(true, value);
+	}
+	
+	public boolean RollbackWriteLock(int transactionID, int variableID) {
+		ReentrantLock stripe = StripeOf(variableID);
+		stripe.lock();
+		try {
+			return Rollback(transactionID, variableID);
+		} finally {
+			stripe.unlock();
 		}
 	}
 	
-	public OperationResponse Write(Operation operation) {
-		if (this.lockTable.containsKey(operation.variableID) == false || this.lockTable.get(operation.variableID).lockType != LockType.WRITE 
-				|| this.lockTable.get(operation.variableID).transactionIDs.contains(operation.transactionID) == false) {
-			writeLine(String.format("Error: transaction performs write before acquiring write locks\n"));
-			return new OperationResponse(false);
+	private boolean Rollback(int transactionID, int variableID) {
+		int slot = Slot(variableID);
+		VariableLockNode vln = this.lockTable[slot];
+		if (vln == null || vln.lockType != LockType.WRITE || vln.transactionIDs.Contains(transactionID) == false) {
+			return false;
+		}
+		Set<Integer> written = this.transactionsToVariables.get(transactionID);
+		if (written != null && written.contains(variableID)) {
+			// held by an earlier write that went through, not part of this attempt
+			return false;
+		}
+		if (vln.upgraded) {
+			vln.lockType = LockType.READ;
 		}
 		else {
-			this.uncommitted.put(operation.variableID, operation.valueToWrite);
-			if (this.transactionsToVariables.containsKey(operation.transactionID) == false) {
-				this.transactionsToVariables.put(operation.transactionID, new HashSet<Integer>());
+			vln.transactionIDs.Remove(transactionID);
+			vln.lockType = LockType.IDLE;
+		}
+		vln.upgraded = false;
+		this.metrics.writeRollbacks.increment();
+		boolean granted = GrantWaiting(variableID);
+		NotifyVariable(variableID);
+		return granted;
+	}
+	
+	public OperationResponse Read(Operation operation) {
+		ReentrantLock stripe = StripeOf(operation.variableID);
+		stripe.lock();
+		try {
+			int slot = Slot(operation.variableID);
+			if (this.siteStatus == SiteStatus.DOWN || this.upToDate[slot] == false) {
+				return new OperationResponse(false);
 			}
-			this.transactionsToVariables.get(operation.transactionID).add(operation.variableID);
-			return new OperationResponse(true);
+			VariableLockNode vln = this.lockTable[slot];
+			if (vln == null || vln.transactionIDs.Contains(operation.transactionID) == false) {
+				writeLine("Error: transaction performs read before acquiring read locks");
+				return new OperationResponse(false);
+			}
+			else {
+				// must read from memory to ensure read-your-writes principal
+				int value = this.uncommitted[slot];
+				return new OperationResponse(true, value);
+			}
+		} finally {
+			stripe.unlock();
 		}
 	}
 	
+	public OperationResponse Write(Operation operation) {
+		ReentrantLock stripe = StripeOf(operation.variableID);
+		stripe.lock();
+		try {
+			if (this.siteStatus == SiteStatus.DOWN) {
+				return new OperationResponse(false);
+			}
+			return new OperationResponse(Apply(operation.transactionID, operation.variableID, operation.valueToWrite));
+		} finally {
+			stripe.unlock();
+		}
+	}
+	
+	private boolean Apply(int transactionID, int variableID, int value) {
+		int slot = Slot(variableID);
+		VariableLockNode vln = this.lockTable[slot];
+		if (vln == null || vln.lockType != LockType.WRITE || vln.transactionIDs.Contains(transactionID) == false) {
+			writeLine("Error: transaction performs write before acquiring write locks");
+			return false;
+		}
+		this.uncommitted[slot] = value;
+		this.transactionsToVariables.computeIfAbsent(transactionID, k -> ConcurrentHashMap.newKeySet()).add(variableID);
+		return true;
+	}
+	
 	public OperationResponse ReadOnly(Operation operation) {
-		if (this.committed.containsKey(operation.variableID) == false) {
-			return new OperationResponse(false);
-		}
-		for (CommittedValues cv: this.committed.get(operation.variableID)) {
-			if (cv.commitTime <= operation.timestamp) {
-				if (operation.variableID % 2 == 0) {
-					// check stale data
-					for (int failTime: this.failureHistory) {
-						if (failTime > cv.commitTime && failTime <= operation.timestamp) {
-							return new OperationResponse(false);
-						}
-					}
-					return new OperationResponse(true, cv.value);
-				}
-				else {
-					return new OperationResponse(true, cv.value);
+		ReentrantLock stripe = StripeOf(operation.variableID);
+		stripe.lock();
+		try {
+			int slot = Slot(operation.variableID);
+			if (slot < 0) {
+				return new OperationResponse(false);
+			}
+			VersionChain versions = Versions(slot);
+			int position = versions.Find(operation.timestamp);
+			if (position == -1) {
+				return new OperationResponse(false);
+			}
+			int commitTime = versions.CommitTimeAt(position);
+			if (this.placement.IsReplicated(operation.variableID)) {
+				// check stale data: the site must not have failed after the version was committed
+				if (this.availability.FailedBetween(commitTime, operation.timestamp)) {
+					this.metrics.readOnlyStaleRejects.increment();
+					return new OperationResponse(false);
 				}
 			}
+			return new OperationResponse(true, versions.ValueAt(position));
+		} finally {
+			stripe.unlock();
 		}
-		return new OperationResponse(false);
 	}
 	
-	private void ReassignLocks() {
-		boolean grantLock = false;
-		while (true) {
-			grantLock = false;
-			for (Map.Entry<Integer, VariableLockNode> entry: this.lockTable.entrySet()) {
-				VariableLockNode vln = entry.getValue();
-				if (vln.waitlist.isEmpty() == false) {
-					TransactionLockNode tln = entry.getValue().waitlist.get(0);
-					if (tln.lockType == LockType.READ) {
-						if (vln.lockType == LockType.IDLE || vln.lockType == LockType.READ || vln.transactionIDs.contains(tln.transactionID)) {
-							grantLock = true;
-							if (vln.lockType == LockType.IDLE) {
-								vln.lockType = LockType.READ;
-							}
-							vln.transactionIDs.add(tln.transactionID);
-							vln.waitlist.remove(0);
-						}
-					}
-					else {
-						if (vln.lockType == LockType.IDLE || 
-								(vln.transactionIDs.contains(tln.transactionID) && (vln.lockType == LockType.WRITE || vln.transactionIDs.size() == 1))) {
-							grantLock = true;
-							vln.lockType = LockType.WRITE;
-							vln.transactionIDs.add(tln.transactionID);
-							vln.waitlist.remove(0);
-						}
-					}
+	private void ReassignLocks(IntSet variables) {
+		// only a release can make a waitlist head grantable, so the released variables are the only candidates
+		long start = System.nanoTime();
+		for (int i = 0; i < variables.Size(); i++) {
+			GrantWaiting(variables.Get(i));
+		}
+		for (int i = 0; i < variables.Size(); i++) {
+			GrantRange(Slot(variables.Get(i)) / BLOCKSIZE);
+		}
+		this.metrics.reassignNanos.Record(System.nanoTime() - start);
+	}
+	
+	private boolean GrantWaiting(int variableID) {
+		int slot = Slot(variableID);
+		VariableLockNode vln = this.lockTable[slot];
+		if (vln == null) {
+			return false;
+		}
+		boolean granted = false;
+		while (vln.waitlist.isEmpty() == false) {
+			TransactionLockNode tln = vln.waitlist.peekFirst();
+			if (tln.lockType == LockType.READ) {
+				// a run of queued readers is granted together
+				if (vln.lockType == LockType.WRITE && vln.transactionIDs.Contains(tln.transactionID) == false) {
+					break;
+				}
+				if (vln.lockType == LockType.IDLE) {
+					vln.lockType = LockType.READ;
 				}
 			}
-			if (grantLock == false) {
+			else if (RangeAllows(tln.transactionID, slot) == false) {
+				// a scan holds the block
 				break;
 			}
+			else if (vln.lockType == LockType.IDLE) {
+				vln.lockType = LockType.WRITE;
+				vln.upgraded = false;
+			}
+			else if (vln.transactionIDs.Size() == 1 && vln.transactionIDs.Get(0) == tln.transactionID) {
+				// upgrade (or repeat) by the only holder
+				if (vln.lockType == LockType.READ) {
+					vln.upgraded = true;
+				}
+				vln.lockType = LockType.WRITE;
+			}
+			else {
+				break;
+			}
+			vln.transactionIDs.Add(tln.transactionID);
+			vln.waitlist.pollFirst();
+			granted = true;
+			this.metrics.locksGranted.increment();
+		}
+		if (granted) {
+			NotifyVariable(variableID);
 		}
+		return granted;
 	}
 	
 	public void Commit(int transactionID, int timestamp) {
-		if (this.transactionsToVariables.containsKey(transactionID)) {
-			for (int variableID: this.transactionsToVariables.get(transactionID)) {
-				this.committed.get(variableID).add(0, new CommittedValues(this.uncommitted.get(variableID), timestamp));
-				this.upToDate.put(variableID, true);
-			}
-			this.transactionsToVariables.remove(transactionID);
+		long lsn = -1;
+		LockAll();
+		try {
+			lsn = Install(transactionID, timestamp);
+			ReassignLocks(ReleaseLocks(transactionID));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			UnlockAll();
 		}
-		
-		for (Map.Entry<Integer, VariableLockNode> entry: this.lockTable.entrySet()) {
-			if (entry.getValue().transactionIDs.contains(transactionID)) {
-				entry.getValue().transactionIDs.remove(transactionID);
-				ListIterator<TransactionLockNode> iter = entry.getValue().waitlist.listIterator();
+		// the locks are already released, later commits append behind this record and share its fsync
+		SyncLog(lsn);
+	}
+	
+	public void CancelWaiting(int transactionID) {
+		LockAll();
+		try {
+			IntSet changed = new IntSet();
+			IntSet variables = this.transactionLocks.get(transactionID);
+			for (int i = 0; variables != null && i < variables.Size(); i++) {
+				int variableID = variables.Get(i);
+				VariableLockNode vln = this.lockTable[Slot(variableID)];
+				if (vln == null) {
+					continue;
+				}
+				boolean removed = false;
+				Iterator<TransactionLockNode> iter = vln.waitlist.iterator();
 				while (iter.hasNext()) {
 					if (iter.next().transactionID == transactionID) {
 						iter.remove();
+						removed = true;
 					}
 				}
-				if (entry.getValue().transactionIDs.size() == 0) {
-					entry.getValue().lockType = LockType.IDLE;
+				if (removed) {
+					changed.Add(variableID);
+					NotifyVariable(variableID);
+				}
+			}
+			IntSet blocks = this.transactionRanges.get(transactionID);
+			for (int i = 0; blocks != null && i < blocks.Size(); i++) {
+				int block = blocks.Get(i);
+				RangeLockNode rln = this.rangeTable[block];
+				if (rln != null && rln.waitlist.Remove(transactionID)) {
+					UpdateBlockWaitEdges(block);
+					GrantRange(block);
+				}
+			}
+			ReassignLocks(changed);
+		} finally {
+			UnlockAll();
+		}
+	}
+	
+	public void CommitGroup(int[] transactionIDs, int count, int timestamp) {
+		long lsn = -1;
+		LockAll();
+		try {
+			for (int i = 0; i < count; i++) {
+				lsn = Math.max(lsn, Install(transactionIDs[i], timestamp));
+			}
+			IntSet released = new IntSet();
+			for (int i = 0; i < count; i++) {
+				IntSet variables = ReleaseLocks(transactionIDs[i]);
+				for (int j = 0; j < variables.Size(); j++) {
+					released.Add(variables.Get(j));
 				}
 			}
+			// a variable released by several members is re-granted once
+			ReassignLocks(released);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			UnlockAll();
 		}
-		ReassignLocks();
+		// one fsync for the whole group
+		SyncLog(lsn);
 	}
 	
-	public void Abort(int transactionID) {
-		if (this.transactionsToVariables.containsKey(transactionID)) {
-			for (int variableID: this.transactionsToVariables.get(transactionID)) {
-				this.uncommitted.put(variableID, this.committed.get(variableID).get(0).value);
+	// make the writes of the transaction the committed versions, returns the log position of its record (-1 if none)
+	private long Install(int transactionID, int timestamp) throws IOException {
+		Set<Integer> written = this.transactionsToVariables.remove(transactionID);
+		if (written == null) {
+			return -1;
+		}
+		int[] loggedVariables = new int[written.size()];
+		int[] loggedValues = new int[written.size()];
+		int count = 0;
+		for (int variableID: written) {
+			int slot = Slot(variableID);
+			VersionChain versions = Versions(slot);
+			versions.Append(this.uncommitted[slot], timestamp);
+			versions.Prune(this.snapshotHorizon);
+			this.metrics.versionDepth.Record(versions.Depth());
+			this.upToDate[slot] = true;
+			loggedVariables[count] = variableID;
+			loggedValues[count] = this.uncommitted[slot];
+			count++;
+			NotifyVariable(variableID);
+		}
+		long lsn = -1;
+		if (this.log != null) {
+			lsn = this.log.AppendCommit(timestamp, loggedVariables, loggedValues, count);
+			if (this.log.NeedsCheckpoint()) {
+				Checkpoint();
 			}
-			this.transactionsToVariables.remove(transactionID);
 		}
+		return lsn;
+	}
+	
+	public void Abort(int transactionID) {
+		LockAll();
+		try {
+			if (this.transactionsToVariables.containsKey(transactionID)) {
+				for (int variableID: this.transactionsToVariables.get(transactionID)) {
+					int slot = Slot(variableID);
+					this.uncommitted[slot] = LatestValue(slot);
+				}
+				this.transactionsToVariables.remove(transactionID);
+			}
 		
-		for (Map.Entry<Integer, VariableLockNode> entry: this.lockTable.entrySet()) {
-			if (entry.getValue().transactionIDs.contains(transactionID)) {
-				entry.getValue().transactionIDs.remove(transactionID);
-				ListIterator<TransactionLockNode> iter = entry.getValue().waitlist.listIterator();
-				while (iter.hasNext()) {
-					if (iter.next().transactionID == transactionID) {
-						iter.remove();
+			ReassignLocks(ReleaseLocks(transactionID));
+		} finally {
+			UnlockAll();
+		}
+	}
+	
+	public int AttachLog(WriteAheadLog log) throws IOException {
+		LockAll();
+		try {
+			int records = log.Replay(new WriteAheadLog.Target() {
+				public void RestoreValue(int variableID, int value, boolean upToDate) {
+					int slot = Slot(variableID);
+					if (slot < 0) {
+						// placed elsewhere by the current configuration
+						return;
+					}
+					committed[slot] = new VersionChain(value, -1);
+					uncommitted[slot] = value;
+					DataManager.this.upToDate[slot] = upToDate;
+				}
+				
+				public void RestoreRecover() {
+					for (int slot = 0; slot < variables.length; slot++) {
+						if (placement.IsReplicated(variables[slot])) {
+							DataManager.this.upToDate[slot] = false;
+						}
+					}
+				}
+			});
+			this.log = log;
+			return records;
+		} finally {
+			UnlockAll();
+		}
+	}
+	
+	public void CloseLog() throws IOException {
+		if (this.log != null) {
+			this.log.Close();
+			this.log = null;
+		}
+	}
+	
+	public void Close() throws IOException {
+		CloseLog();
+	}
+	
+	public int ExportVersions(int variableID, int after, int limit, int[] commitTimes, int[] values) {
+		ReentrantLock stripe = StripeOf(variableID);
+		stripe.lock();
+		try {
+			int slot = Slot(variableID);
+			if (this.siteStatus == SiteStatus.DOWN || this.upToDate[slot] == false) {
+				return -1;
+			}
+			VariableLockNode vln = this.lockTable[slot];
+			if (vln != null && vln.lockType == LockType.WRITE) {
+				// the writer may commit here but not on the copy being caught up
+				return -1;
+			}
+			if (this.committed[slot] == null) {
+				return 0;
+			}
+			VersionChain versions = this.committed[slot];
+			int count = 0;
+			for (int k = versions.After(after); k < versions.End() && count < limit; k++) {
+				commitTimes[count] = versions.CommitTimeAt(k);
+				values[count] = versions.ValueAt(k);
+				count++;
+			}
+			return count;
+		} finally {
+			stripe.unlock();
+		}
+	}
+	
+	public boolean InstallVersions(int variableID, int count, int[] commitTimes, int[] values, boolean last) {
+		long lsn = -1;
+		ReentrantLock stripe = StripeOf(variableID);
+		stripe.lock();
+		try {
+			int slot = Slot(variableID);
+			if (this.siteStatus == SiteStatus.DOWN || this.upToDate[slot]) {
+				return false;
+			}
+			VersionChain versions = Versions(slot);
+			for (int i = 0; i < count; i++) {
+				if (commitTimes[i] > versions.LatestCommitTime()) {
+					versions.Append(values[i], commitTimes[i]);
+				}
+			}
+			versions.Prune(this.snapshotHorizon);
+			this.metrics.caughtUpVersions.add(count);
+			if (last) {
+				VariableLockNode vln = this.lockTable[slot];
+				if (vln == null || vln.lockType != LockType.WRITE) {
+					this.uncommitted[slot] = LatestValue(slot);
+				}
+				this.upToDate[slot] = true;
+				this.metrics.caughtUpVariables.increment();
+				if (this.log != null) {
+					// only the final value is logged, a replayed commit counts as up to date
+					lsn = this.log.AppendCommit(versions.LatestCommitTime(), new int[] {variableID}, new int[] {LatestValue(slot)}, 1);
+				}
+				NotifyVariable(variableID);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			stripe.unlock();
+		}
+		SyncLog(lsn);
+		return true;
+	}
+	
+	public OperationResponse ReadCommitted(Operation operation) {
+		ReentrantLock stripe = StripeOf(operation.variableID);
+		stripe.lock();
+		try {
+			int slot = Slot(operation.variableID);
+			if (this.siteStatus == SiteStatus.DOWN || this.upToDate[slot] == false) {
+				return new OperationResponse(false);
+			}
+			return new OperationResponse(true, LatestValue(slot));
+		} finally {
+			stripe.unlock();
+		}
+	}
+	
+	public int Blockers(int transactionID, int first, int last, int[] blockers) {
+		IntSet found = new IntSet();
+		if (first == last) {
+			ReentrantLock stripe = StripeOf(first);
+			stripe.lock();
+			try {
+				VariableBlockers(transactionID, Slot(first), found);
+			} finally {
+				stripe.unlock();
+			}
+		}
+		else {
+			LockAll();
+			try {
+				int end = FirstSlotAfter(last);
+				for (int slot = FirstSlotAfter(first - 1); slot < end; slot++) {
+					VariableBlockers(transactionID, slot, found);
+					RangeLockNode rln = this.rangeTable[slot / BLOCKSIZE];
+					if (slot % BLOCKSIZE == 0 && rln != null && rln.waitlist.Contains(transactionID)) {
+						BlockWriters(transactionID, slot / BLOCKSIZE, found);
+					}
+				}
+			} finally {
+				UnlockAll();
+			}
+		}
+		for (int i = 0; i < Math.min(found.Size(), blockers.length); i++) {
+			blockers[i] = found.Get(i);
+		}
+		return found.Size();
+	}
+	
+	private void VariableBlockers(int transactionID, int slot, IntSet found) {
+		VariableLockNode vln = this.lockTable[slot];
+		if (vln == null) {
+			return;
+		}
+		RangeLockNode rln = this.rangeTable[slot / BLOCKSIZE];
+		ArrayList<TransactionLockNode> ahead = new ArrayList<TransactionLockNode>();
+		for (TransactionLockNode tln: vln.waitlist) {
+			if (tln.transactionID == transactionID) {
+				if (VTConflict(vln, tln)) {
+					for (int k = 0; k < vln.transactionIDs.Size(); k++) {
+						if (vln.transactionIDs.Get(k) != transactionID) {
+							found.Add(vln.transactionIDs.Get(k));
+						}
+					}
+				}
+				for (TransactionLockNode before: ahead) {
+					if (TTConflict(tln, before)) {
+						found.Add(before.transactionID);
 					}
 				}
-				if (entry.getValue().transactionIDs.size() == 0) {
-					entry.getValue().lockType = LockType.IDLE;
+				if (tln.lockType == LockType.WRITE && rln != null) {
+					for (int k = 0; k < rln.transactionIDs.Size(); k++) {
+						if (rln.transactionIDs.Get(k) != transactionID) {
+							found.Add(rln.transactionIDs.Get(k));
+						}
+					}
+				}
+			}
+			ahead.add(tln);
+		}
+	}
+	
+	// called with every stripe held, so no commit can slip between the snapshot and the log truncation
+	private void Checkpoint() throws IOException {
+		int[] values = new int[this.variables.length];
+		for (int slot = 0; slot < this.variables.length; slot++) {
+			values[slot] = LatestValue(slot);
+		}
+		this.log.Checkpoint(this.variables, values, this.upToDate);
+	}
+	
+	private void SyncLog(long lsn) {
+		if (lsn < 0) {
+			return;
+		}
+		try {
+			this.log.Sync(lsn);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	public void SetSnapshotHorizon(int horizon) {
+		this.snapshotHorizon = horizon;
+	}
+	
+	// drop the transaction from the holders and the waitlist of every variable it used on this site
+	private IntSet ReleaseLocks(int transactionID) {
+		IntSet variables = this.transactionLocks.remove(transactionID);
+		this.batchUndo.remove(transactionID);
+		IntSet released = new IntSet();
+		IntSet blocks = this.transactionRanges.remove(transactionID);
+		if (blocks != null) {
+			ReleaseRanges(transactionID, blocks, released);
+		}
+		if (variables == null) {
+			return released;
+		}
+		for (int i = 0; i < variables.Size(); i++) {
+			int variableID = variables.Get(i);
+			VariableLockNode vln = this.lockTable[Slot(variableID)];
+			if (vln == null) {
+				continue;
+			}
+			boolean changed = false;
+			Iterator<TransactionLockNode> iter = vln.waitlist.iterator();
+			while (iter.hasNext()) {
+				if (iter.next().transactionID == transactionID) {
+					iter.remove();
+					changed = true;
+				}
+			}
+			if (vln.transactionIDs.Remove(transactionID)) {
+				changed = true;
+				if (vln.transactionIDs.Size() == 0) {
+					vln.lockType = LockType.IDLE;
 				}
 			}
+			if (changed) {
+				released.Add(variableID);
+				NotifyVariable(variableID);
+			}
 		}
-		ReassignLocks();
+		return released;
+	}
+	
+	// the writers queued on the variables of a released block may now go through
+	private void ReleaseRanges(int transactionID, IntSet blocks, IntSet released) {
+		for (int i = 0; i < blocks.Size(); i++) {
+			int block = blocks.Get(i);
+			RangeLockNode rln = this.rangeTable[block];
+			if (rln == null) {
+				continue;
+			}
+			rln.waitlist.Remove(transactionID);
+			if (rln.transactionIDs.Remove(transactionID) == false) {
+				UpdateBlockWaitEdges(block);
+				continue;
+			}
+			for (int slot = block * BLOCKSIZE; slot < Math.min((block + 1) * BLOCKSIZE, this.variables.length); slot++) {
+				VariableLockNode vln = this.lockTable[slot];
+				if (vln != null && vln.waitlist.isEmpty() == false && released.Add(this.variables[slot])) {
+					NotifyVariable(this.variables[slot]);
+				}
+			}
+			UpdateBlockWaitEdges(block);
+		}
+	}
+	
+	private VariableLockNode LockNode(int variableID, LockType lockType) {
+		int slot = Slot(variableID);
+		if (this.lockTable[slot] == null) {
+			this.lockTable[slot] = new VariableLockNode(lockType);
+		}
+		return this.lockTable[slot];
+	}
+	
+	// position of the variable in this site's tables, -1 if the site does not hold it
+	private int Slot(int variableID) {
+		int slot = Arrays.binarySearch(this.variables, variableID);
+		return slot < 0 ? -1 : slot;
+	}
+	
+	private VersionChain Versions(int slot) {
+		if (this.committed[slot] == null) {
+			this.committed[slot] = new VersionChain(this.variables[slot] * 10, -1);
+		}
+		return this.committed[slot];
+	}
+	
+	private int LatestValue(int slot) {
+		return this.committed[slot] == null ? this.variables[slot] * 10 : this.committed[slot].LatestValue();
+	}
+	
+	private void IndexLock(int transactionID, int variableID) {
+		IntSet variables = this.transactionLocks.get(transactionID);
+		if (variables == null) {
+			variables = new IntSet();
+			this.transactionLocks.put(transactionID, variables);
+		}
+		variables.Add(variableID);
 	}
 	
 	private boolean VTConflict(VariableLockNode vln, TransactionLockNode tln) {
@@ -441,7 +1345,7 @@ public class DataManager {
 			return false;
 		}
 		if (vln.lockType == LockType.WRITE) {
-			if (vln.transactionIDs.contains(tln.transactionID)) {
+			if (vln.transactionIDs.Contains(tln.transactionID)) {
 				return false;
 			}
 			return true;
@@ -449,7 +1353,7 @@ public class DataManager {
 		if (tln.lockType == LockType.READ) {
 			return false;
 		}
-		if (vln.transactionIDs.contains(tln.transactionID) && vln.transactionIDs.size() == 1) {
+		if (vln.transactionIDs.Contains(tln.transactionID) && vln.transactionIDs.Size() == 1) {
 			return false;
 		}
 		return true;
@@ -466,47 +1370,238 @@ public class DataManager {
 	}
 	
 	public HashMap<Integer, HashSet<Integer>> GenWaitGraph() {
-		HashMap<Integer, HashSet<Integer>> waitGraph = new HashMap<Integer, HashSet<Integer>>();
-		for (Map.Entry<Integer, VariableLockNode> entry: this.lockTable.entrySet()) {
-			VariableLockNode vln = entry.getValue();
-			if (vln.lockType != LockType.IDLE && vln.waitlist.isEmpty() == false) {
-				for (TransactionLockNode tln: vln.waitlist) {
-					if (VTConflict(vln, tln)) {
-						for (int transactionID: vln.transactionIDs) {
-							if (tln.transactionID != transactionID) {
-								if (waitGraph.containsKey(tln.transactionID) == false) {
-									waitGraph.put(tln.transactionID, new HashSet<Integer>());
-								}
-								waitGraph.get(tln.transactionID).add(transactionID);
-							}
-						}
+		LockAll();
+		try {
+			HashMap<Integer, HashSet<Integer>> waitGraph = new HashMap<Integer, HashSet<Integer>>();
+			for (int slot = 0; slot < this.lockTable.length; slot++) {
+				if (this.lockTable[slot] == null) {
+					continue;
+				}
+				int[] edges = VariableWaitEdges(slot);
+				for (int i = 0; i < edges.length; i += 2) {
+					if (waitGraph.containsKey(edges[i]) == false) {
+						waitGraph.put(edges[i], new HashSet<Integer>());
 					}
+					waitGraph.get(edges[i]).add(edges[i+1]);
 				}
-				
-				for (int i = 0; i < vln.waitlist.size(); i++) {
-					for (int j = 0; j < i; j++) {
-						TransactionLockNode tln1 = vln.waitlist.get(i);
-						TransactionLockNode tln2 = vln.waitlist.get(j);
-						if (TTConflict(tln1, tln2)) {
-							if (waitGraph.containsKey(tln1.transactionID) == false) {
-								waitGraph.put(tln1.transactionID, new HashSet<Integer>());
-							}
-							waitGraph.get(tln1.transactionID).add(tln2.transactionID);
-						}
+			}
+			return waitGraph;
+		} finally {
+			UnlockAll();
+		}
+	}
+	
+	// most queued-on variables first, "x4 queued 12 waiting 2, ...", counts restart when a failure drops the lock table
+	public String DescribeContention(int top) {
+		ArrayList<Integer> slots = new ArrayList<Integer>();
+		final long[] queued;
+		final int[] waiting;
+		LockAll();
+		try {
+			queued = new long[this.lockTable.length];
+			waiting = new int[this.lockTable.length];
+			for (int slot = 0; slot < this.lockTable.length; slot++) {
+				VariableLockNode vln = this.lockTable[slot];
+				if (vln != null && vln.queued > 0) {
+					queued[slot] = vln.queued;
+					waiting[slot] = vln.waitlist.size();
+					slots.add(slot);
+				}
+			}
+		} finally {
+			UnlockAll();
+		}
+		slots.sort((a, b) -> queued[a] != queued[b] ? Long.compare(queued[b], queued[a]) : Integer.compare(a, b));
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < Math.min(top, slots.size()); i++) {
+			int slot = slots.get(i);
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append('x').append(this.variables[slot]).append(" queued ").append(queued[slot]).append(" waiting ").append(waiting[slot]);
+		}
+		return sb.toString();
+	}
+	
+	private void RecordQueued(VariableLockNode vln) {
+		vln.queued++;
+		this.metrics.locksQueued.increment();
+		this.metrics.waitlistLength.Record(vln.waitlist.size());
+	}
+	
+	// wait-for edges caused by one variable, as (waiting, blocking) pairs
+	private int[] VariableWaitEdges(int slot) {
+		VariableLockNode vln = this.lockTable[slot];
+		RangeLockNode rln = this.rangeTable[slot / BLOCKSIZE];
+		if (rln != null) {
+			return RangeWaitEdges(vln, rln);
+		}
+		if (vln.lockType == LockType.IDLE || vln.waitlist.isEmpty()) {
+			return NOEDGES;
+		}
+		ArrayList<Integer> edges = new ArrayList<Integer>();
+		VariableEdges(vln, edges);
+		return ToArray(edges);
+	}
+	
+	// the edges of the variable together with those between its writers and the scans on its block
+	private int[] RangeWaitEdges(VariableLockNode vln, RangeLockNode rln) {
+		ArrayList<Integer> edges = new ArrayList<Integer>();
+		if (vln.lockType != LockType.IDLE && vln.waitlist.isEmpty() == false) {
+			VariableEdges(vln, edges);
+		}
+		for (TransactionLockNode tln: vln.waitlist) {
+			if (tln.lockType != LockType.WRITE) {
+				continue;
+			}
+			for (int k = 0; k < rln.transactionIDs.Size(); k++) {
+				if (rln.transactionIDs.Get(k) != tln.transactionID) {
+					edges.add(tln.transactionID);
+					edges.add(rln.transactionIDs.Get(k));
+				}
+			}
+		}
+		if (vln.lockType == LockType.WRITE) {
+			int holder = vln.transactionIDs.Get(0);
+			for (int k = 0; k < rln.waitlist.Size(); k++) {
+				if (rln.waitlist.Get(k) != holder) {
+					edges.add(rln.waitlist.Get(k));
+					edges.add(holder);
+				}
+			}
+		}
+		// a queued scan also waits for the writers queued before it, unless it holds the variable itself (BlockWriters)
+		for (TransactionLockNode tln: vln.waitlist) {
+			if (tln.lockType == LockType.READ) {
+				continue;
+			}
+			for (int k = 0; k < rln.waitlist.Size(); k++) {
+				int scan = rln.waitlist.Get(k);
+				if (scan != tln.transactionID && vln.transactionIDs.Contains(scan) == false) {
+					edges.add(scan);
+					edges.add(tln.transactionID);
+				}
+			}
+		}
+		return ToArray(edges);
+	}
+	
+	private void VariableEdges(VariableLockNode vln, ArrayList<Integer> edges) {
+		TransactionLockNode[] waiting = vln.waitlist.toArray(new TransactionLockNode[vln.waitlist.size()]);
+		for (TransactionLockNode tln: waiting) {
+			if (VTConflict(vln, tln)) {
+				for (int k = 0; k < vln.transactionIDs.Size(); k++) {
+					int transactionID = vln.transactionIDs.Get(k);
+					if (tln.transactionID != transactionID) {
+						edges.add(tln.transactionID);
+						edges.add(transactionID);
 					}
 				}
 			}
 		}
-		return waitGraph;
+		for (int i = 0; i < waiting.length; i++) {
+			for (int j = 0; j < i; j++) {
+				TransactionLockNode tln1 = waiting[i];
+				TransactionLockNode tln2 = waiting[j];
+				if (TTConflict(tln1, tln2)) {
+					edges.add(tln1.transactionID);
+					edges.add(tln2.transactionID);
+				}
+			}
+		}
+	}
+	
+	private static int[] ToArray(ArrayList<Integer> edges) {
+		if (edges.isEmpty()) {
+			return NOEDGES;
+		}
+		int[] result = new int[edges.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = edges.get(i);
+		}
+		return result;
+	}
+	
+	// replace the contribution of this variable to the shared wait-for graph
+	private void UpdateWaitEdges(int variableID) {
+		if (this.waitGraph == null) {
+			return;
+		}
+		int slot = Slot(variableID);
+		VariableLockNode vln = this.lockTable[slot];
+		int[] edges = (vln == null) ? NOEDGES : VariableWaitEdges(slot);
+		int[] old = this.waitEdges[slot];
+		this.waitEdges[slot] = (edges.length == 0) ? null : edges;
+		if (old != null) {
+			for (int i = 0; i < old.length; i += 2) {
+				this.waitGraph.RemoveEdge(old[i], old[i+1]);
+			}
+		}
+		for (int i = 0; i < edges.length; i += 2) {
+			this.waitGraph.AddEdge(edges[i], edges[i+1]);
+		}
+	}
+	
+	// the block lock changed, recompute the edges of every locked variable in it
+	private void UpdateBlockWaitEdges(int block) {
+		if (this.waitGraph == null) {
+			return;
+		}
+		for (int slot = block * BLOCKSIZE; slot < Math.min((block + 1) * BLOCKSIZE, this.variables.length); slot++) {
+			if (this.lockTable[slot] != null) {
+				UpdateWaitEdges(this.variables[slot]);
+			}
+		}
+	}
+	
+	private void ClearWaitEdges() {
+		if (this.waitGraph == null) {
+			return;
+		}
+		for (int slot = 0; slot < this.waitEdges.length; slot++) {
+			int[] edges = this.waitEdges[slot];
+			if (edges == null) {
+				continue;
+			}
+			for (int i = 0; i < edges.length; i += 2) {
+				this.waitGraph.RemoveEdge(edges[i], edges[i+1]);
+			}
+			this.waitEdges[slot] = null;
+		}
+	}
+	
+	private ReentrantLock StripeOf(int variableID) {
+		return this.stripes[variableID % STRIPECNT];
+	}
+	
+	private void LockAll() {
+		for (int i = 0; i < STRIPECNT; i++) {
+			this.stripes[i].lock();
+		}
+	}
+	
+	private void UnlockAll() {
+		for (int i = STRIPECNT - 1; i >= 0; i--) {
+			this.stripes[i].unlock();
+		}
+	}
+	
+	private void NotifyVariable(int variableID) {
+		UpdateWaitEdges(variableID);
+		if (this.listener != null) {
+			this.listener.VariableChanged(this.siteID, variableID);
+		}
+	}
+	
+	private void NotifySite() {
+		if (this.listener != null) {
+			this.listener.SiteChanged(this.siteID);
+		}
 	}
 	
 	private void writeLine(String line) {
-		try {
-			this.writer.write(line);
-			this.writer.flush();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		synchronized (this.writer) {
+			this.writer.Line(line);
 		}
 	}
 }
@@ -0,0 +1,87 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Date: 2026-10-17
+ * Description: lock-free histogram of non-negative longs with power-of-two buckets, bucket b counts the values
+ *    whose highest set bit is b (bucket 0 also takes 0). Every bucket is a LongAdder, so concurrent recorders
+ *    hit striped cells instead of one contended word and recording stays cheap enough to leave on.
+ *    Percentiles are resolved to the upper bound of their bucket, within a factor of two of the true value.
+ *
+ * 1. Name: Record
+ * 	  Input: value, negative values count as 0
+ *
+ * 2. Name: Count / Mean / Max / Percentile
+ * 	  Input: none / none / none / fraction in [0, 1]
+ *    Output: statistics of everything recorded so far, read without stopping the recorders
+ *
+ * 3. Name: Describe
+ *    Output: one line summary
+ * */
+public class Histogram {
+	private final static int BUCKETCNT = 64;
+
+	private final LongAdder[] buckets;
+	private final LongAdder sum;
+	private final LongAccumulator max;
+
+	public Histogram() {
+		this.buckets = new LongAdder[BUCKETCNT];
+		for (int i = 0; i < BUCKETCNT; i++) {
+			this.buckets[i] = new LongAdder();
+		}
+		this.sum = new LongAdder();
+		this.max = new LongAccumulator(Math::max, 0);
+	}
+
+	public void Record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		this.buckets[value == 0 ? 0 : 63 - Long.numberOfLeadingZeros(value)].increment();
+		this.sum.add(value);
+		this.max.accumulate(value);
+	}
+
+	public long Count() {
+		long count = 0;
+		for (int i = 0; i < BUCKETCNT; i++) {
+			count += this.buckets[i].sum();
+		}
+		return count;
+	}
+
+	public double Mean() {
+		long count = Count();
+		return count == 0 ? 0 : (double) this.sum.sum() / count;
+	}
+
+	public long Max() {
+		return this.max.get();
+	}
+
+	public long Percentile(double p) {
+		long[] counts = new long[BUCKETCNT];
+		long count = 0;
+		for (int i = 0; i < BUCKETCNT; i++) {
+			counts[i] = this.buckets[i].sum();
+			count += counts[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(p * count));
+		for (int i = 0; i < BUCKETCNT; i++) {
+			rank -= counts[i];
+			if (rank <= 0) {
+				// upper bound of the bucket, but never above what was actually seen
+				return Math.min(i == 63 ? Long.MAX_VALUE : (2L << i) - 1, Max());
+			}
+		}
+		return Max();
+	}
+
+	public String Describe() {
+		return String.format("count %d, mean %.1f, p50 %d, p99 %d, max %d", Count(), Mean(), Percentile(0.5), Percentile(0.99), Max());
+	}
+}
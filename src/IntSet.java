@@ -0,0 +1,149 @@
+import java.util.Arrays;
+
+/*
+ * Date: 2026-10-17
+ * Description: set of primitive ints kept in an unsorted array, used for lock holders and per-transaction
+ *    lock indexes. A handful of entries is scanned; past LINEAR entries an open-addressing index over the
+ *    array is kept as well, so a transaction locking many variables does not pay a scan per Add.
+ *
+ * 1. Name: Add / Remove / Contains
+ * 	  Input: value
+ *    Output: whether the set changed / whether the value is in the set
+ *
+ * 2. Name: Size / Get
+ *    Description: iterate with for (i = 0; i < Size(); i++) Get(i)
+ * */
+public class IntSet {
+	private final static int LINEAR = 16;
+
+	private int[] values;
+	private int size;
+	private int[] index; // linear probing, array index + 1 of the value, 0 for an empty slot; null up to LINEAR entries
+
+	public IntSet() {
+		this.values = new int[4];
+		this.size = 0;
+		this.index = null;
+	}
+
+	public boolean Contains(int value) {
+		return Find(value) >= 0;
+	}
+
+	public boolean Add(int value) {
+		if (Contains(value)) {
+			return false;
+		}
+		if (this.size == this.values.length) {
+			this.values = Arrays.copyOf(this.values, this.size * 2);
+		}
+		this.values[this.size++] = value;
+		if (this.index == null ? this.size > LINEAR : this.size * 2 > this.index.length) {
+			Rehash();
+		} else if (this.index != null) {
+			Insert(this.size - 1);
+		}
+		return true;
+	}
+
+	public boolean Remove(int value) {
+		int i = Find(value);
+		if (i < 0) {
+			return false;
+		}
+		int last = --this.size;
+		if (this.index != null) {
+			Delete(i);
+			if (i != last) {
+				// the last one moves into the hole, its slot points to the new place
+				this.index[SlotOf(last)] = i + 1;
+			}
+		}
+		// order does not matter, move the last one into the hole
+		this.values[i] = this.values[last];
+		return true;
+	}
+
+	public int Size() {
+		return this.size;
+	}
+
+	public boolean IsEmpty() {
+		return this.size == 0;
+	}
+
+	public int Get(int index) {
+		return this.values[index];
+	}
+
+	public void Clear() {
+		this.size = 0;
+		this.index = null;
+	}
+
+	// array index of the value, -1 if absent
+	private int Find(int value) {
+		if (this.index == null) {
+			for (int i = 0; i < this.size; i++) {
+				if (this.values[i] == value) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		int mask = this.index.length - 1;
+		for (int slot = Hash(value) & mask; this.index[slot] != 0; slot = (slot + 1) & mask) {
+			if (this.values[this.index[slot] - 1] == value) {
+				return this.index[slot] - 1;
+			}
+		}
+		return -1;
+	}
+
+	private void Rehash() {
+		this.index = new int[Integer.highestOneBit(this.size * 4)];
+		for (int i = 0; i < this.size; i++) {
+			Insert(i);
+		}
+	}
+
+	private void Insert(int i) {
+		int mask = this.index.length - 1;
+		int slot = Hash(this.values[i]) & mask;
+		while (this.index[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		this.index[slot] = i + 1;
+	}
+
+	private int SlotOf(int i) {
+		int mask = this.index.length - 1;
+		int slot = Hash(this.values[i]) & mask;
+		while (this.index[slot] != i + 1) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	// empty the slot of array index i and shift back the entries of the probe run behind it
+	private void Delete(int i) {
+		int mask = this.index.length - 1;
+		int hole = SlotOf(i);
+		this.index[hole] = 0;
+		for (int slot = (hole + 1) & mask; this.index[slot] != 0; slot = (slot + 1) & mask) {
+			int home = Hash(this.values[this.index[slot] - 1]) & mask;
+			// an entry whose home lies cyclically in (hole, slot] is still reachable
+			boolean stays = (hole <= slot) ? (hole < home && home <= slot) : (hole < home || home <= slot);
+			if (!stays) {
+				this.index[hole] = this.index[slot];
+				this.index[slot] = 0;
+				hole = slot;
+			}
+		}
+	}
+
+	private static int Hash(int value) {
+		int mixed = value * 0x9E3779B9;
+		return mixed ^ (mixed >>> 16);
+	}
+}
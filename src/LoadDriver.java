@@ -0,0 +1,295 @@
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Date: 2026-10-17
+ * Description: synthetic workload fed to TransactionManager.Tick as a Command source, no script text involved.
+ *    A fixed number of clients each run one transaction at a time: begin, length reads / writes, end. A client
+ *    sends its next command only after the previous read or write went through (or its transaction got aborted),
+ *    and the clients take turns, one command per tick. Started with "App -load", settings are read from Config:
+ *
+ *    adb.load.transactions   transactions to run (default 10000)
+ *    adb.load.clients        concurrent clients (default 16)
+ *    adb.load.length         reads / writes per transaction (default 4)
+ *    adb.load.readRatio      share of reads among the operations of read-write transactions (default 0.5)
+ *    adb.load.readOnlyRatio  share of read-only transactions (default 0.1)
+ *    adb.load.skew           uniform | zipf, key choice over all variables, rank 1 = x1 (default uniform)
+ *    adb.load.theta          zipf exponent (default 0.99)
+ *    adb.load.failEvery      ticks between site failures, 0 for none (default 0)
+ *    adb.load.downTicks      ticks a failed site stays down (default 50)
+ *    adb.load.seed           random seed (default 1)
+ *    adb.load.echo           print the TransactionManager output too (default false)
+ *
+ * 1. Name: LoadDriver (constructor)
+ * 	  Input: Config, number of variables and sites
+ *
+ * 2. Name: Run
+ * 	  Input: TransactionManager
+ *    Description: tick until every transaction finished
+ *
+ * 3. Name: Report
+ * 	  Input: report stream
+ *    Description: throughput, abort rate by cause and commit latency percentiles in ticks and wall-clock time
+ *
+ * 4. Name: Next
+ *    Description: Command source, due recoveries first, then failure injection, then the next ready client
+ * */
+public class LoadDriver extends Command implements TransactionObserver {
+	private final static int STALLTICKS = 100000;
+
+	private int total;
+	private int clients;
+	private int length;
+	private double readRatio;
+	private double readOnlyRatio;
+	private int failEvery;
+	private int downTicks;
+	private int siteCount;
+	private int variableCount;
+	private double[] zipf; // cumulative distribution over ranks, null for uniform
+	private Random random;
+
+	private int tick;
+	private int started;
+	private int finished;
+	private int progressTick; // last tick an operation or a transaction went through
+	private ArrayDeque<Integer> ready; // clients that may send a command
+	private int[] clientTransaction; // 0 while the client has no transaction
+	private int[] clientRemaining;
+	private boolean[] clientReadOnly;
+	private boolean[] clientAborted;
+	private int[] transactionClient; // indexed by transactionID
+	private long[] beginNanos;
+	private boolean[] siteDown;
+	private ArrayDeque<int[]> recoveries; // (tick, siteID) in tick order
+
+	private int committed;
+	private int deadlockAborts;
+	private int preventionAborts;
+	private int validationAborts;
+	private int failureAborts;
+	private int[] latencyTicks;
+	private long[] latencyNanos;
+	private long elapsedNanos;
+
+	public LoadDriver(Config config, int variableCount, int siteCount) {
+		this.total = config.GetInt("adb.load.transactions", 10000);
+		this.clients = config.GetInt("adb.load.clients", 16);
+		this.length = config.GetInt("adb.load.length", 4);
+		this.readRatio = config.GetDouble("adb.load.readRatio", 0.5);
+		this.readOnlyRatio = config.GetDouble("adb.load.readOnlyRatio", 0.1);
+		this.failEvery = config.GetInt("adb.load.failEvery", 0);
+		this.downTicks = config.GetInt("adb.load.downTicks", 50);
+		this.random = new Random(config.GetInt("adb.load.seed", 1));
+		this.siteCount = siteCount;
+		this.variableCount = variableCount;
+		this.zipf = ZipfTable(config, variableCount);
+
+		this.ready = new ArrayDeque<Integer>();
+		this.clientTransaction = new int[this.clients];
+		this.clientRemaining = new int[this.clients];
+		this.clientReadOnly = new boolean[this.clients];
+		this.clientAborted = new boolean[this.clients];
+		for (int c = 0; c < this.clients; c++) {
+			this.ready.add(c);
+		}
+		this.transactionClient = new int[this.total + 1];
+		this.beginNanos = new long[this.total + 1];
+		this.siteDown = new boolean[siteCount + 1];
+		this.recoveries = new ArrayDeque<int[]>();
+		this.latencyTicks = new int[this.total];
+		this.latencyNanos = new long[this.total];
+	}
+
+	public void Run(TransactionManager manager) {
+		manager.observer = this;
+		long start = System.nanoTime();
+		while (manager.Tick(this)) {
+		}
+		this.elapsedNanos = System.nanoTime() - start;
+	}
+
+	public void Report(PrintStream report) {
+		double seconds = this.elapsedNanos / 1e9;
+		int aborted = this.finished - this.committed;
+
+		report.printf("load: %d transactions, %d clients, %d ticks, %.3f s%n", this.finished, this.clients, this.tick, seconds);
+		report.printf("committed %d (%.1f tx/s, %.4f tx/tick)%n", this.committed, this.committed / seconds, (double) this.committed / Math.max(1, this.tick));
+		report.printf("aborted %d (%.2f%%): deadlock %d, prevention %d, validation %d, site failure %d%n", aborted, 100.0 * aborted / Math.max(1, this.finished), this.deadlockAborts, this.preventionAborts, this.validationAborts, this.failureAborts);
+		int[] ticks = Arrays.copyOf(this.latencyTicks, this.committed);
+		long[] nanos = Arrays.copyOf(this.latencyNanos, this.committed);
+		Arrays.sort(ticks);
+		Arrays.sort(nanos);
+		report.printf("commit latency ticks: p50 %d, p90 %d, p99 %d, p99.9 %d, max %d%n",
+				Percentile(ticks, 0.5), Percentile(ticks, 0.9), Percentile(ticks, 0.99), Percentile(ticks, 0.999), Percentile(ticks, 1.0));
+		report.printf("commit latency us: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+				Percentile(nanos, 0.5) / 1e3, Percentile(nanos, 0.9) / 1e3, Percentile(nanos, 0.99) / 1e3, Percentile(nanos, 0.999) / 1e3, Percentile(nanos, 1.0) / 1e3);
+		if (this.finished < this.total) {
+			report.printf("stopped after %d ticks without progress%n", STALLTICKS);
+		}
+	}
+
+	public boolean Next() {
+		// failures keep coming while every client is blocked, so a stall is measured by progress, not by idle ticks
+		if (this.finished == this.total || this.tick - this.progressTick >= STALLTICKS) {
+			return false;
+		}
+		this.tick++;
+		this.type = CommandType.NONE;
+		if (this.recoveries.isEmpty() == false && this.recoveries.peekFirst()[0] <= this.tick) {
+			this.siteID = this.recoveries.pollFirst()[1];
+			this.siteDown[this.siteID] = false;
+			this.type = CommandType.RECOVER;
+		} else if (this.failEvery > 0 && this.tick % this.failEvery == 0 && PickUpSite()) {
+			this.siteDown[this.siteID] = true;
+			this.recoveries.addLast(new int[] {this.tick + this.downTicks, this.siteID});
+			this.type = CommandType.FAIL;
+		} else if (this.ready.isEmpty() == false) {
+			int client = this.ready.pollFirst();
+			if (IssueFor(client)) {
+				this.ready.addLast(client);
+			}
+		}
+		return true;
+	}
+
+	public void OperationCompleted(Operation op) {
+		this.progressTick = this.tick;
+		int client = this.transactionClient[op.transactionID];
+		if (this.clientTransaction[client] == op.transactionID && this.clientAborted[client] == false) {
+			this.ready.addLast(client);
+		}
+	}
+
+	public void TransactionAborted(int transactionID, Transaction.AbortCause cause) {
+		int client = this.transactionClient[transactionID];
+		if (this.clientTransaction[client] != transactionID || this.clientAborted[client]) {
+			return;
+		}
+		this.clientAborted[client] = true;
+		if (this.ready.contains(client) == false) {
+			// its pending operation is dropped, only end() is left
+			this.ready.addLast(client);
+		}
+	}
+
+	public void TransactionFinished(int transactionID, Transaction transaction, boolean committed, int time) {
+		this.progressTick = this.tick;
+		if (committed) {
+			this.latencyTicks[this.committed] = time - transaction.getStartTime();
+			this.latencyNanos[this.committed] = System.nanoTime() - this.beginNanos[transactionID];
+			this.committed++;
+		} else if (transaction.abortCause == Transaction.AbortCause.DEADLOCK) {
+			this.deadlockAborts++;
+		} else if (transaction.abortCause == Transaction.AbortCause.PREVENTION) {
+			this.preventionAborts++;
+		} else if (transaction.abortCause == Transaction.AbortCause.VALIDATION) {
+			this.validationAborts++;
+		} else {
+			this.failureAborts++;
+		}
+		this.finished++;
+	}
+
+	// fill the fields with the client's next command, returns whether the client may send another one right away
+	private boolean IssueFor(int client) {
+		int transactionID = this.clientTransaction[client];
+		if (transactionID == 0) {
+			if (this.started == this.total) {
+				return false;
+			}
+			transactionID = ++this.started;
+			this.clientTransaction[client] = transactionID;
+			this.clientRemaining[client] = this.length;
+			this.clientReadOnly[client] = this.random.nextDouble() < this.readOnlyRatio;
+			this.clientAborted[client] = false;
+			this.transactionClient[transactionID] = client;
+			this.beginNanos[transactionID] = System.nanoTime();
+			this.transactionID = transactionID;
+			this.type = this.clientReadOnly[client] ? CommandType.BEGINRO : CommandType.BEGIN;
+			return true;
+		}
+		this.transactionID = transactionID;
+		if (this.clientAborted[client] || this.clientRemaining[client] == 0) {
+			this.type = CommandType.END;
+			this.clientTransaction[client] = 0;
+			return true;
+		}
+		this.clientRemaining[client]--;
+		this.variableID = NextVariable();
+		if (this.clientReadOnly[client] || this.random.nextDouble() < this.readRatio) {
+			this.type = CommandType.READ;
+		} else {
+			this.type = CommandType.WRITE;
+			this.value = this.random.nextInt(1000);
+		}
+		// wait for OperationCompleted or TransactionAborted
+		return false;
+	}
+
+	private int NextVariable() {
+		return NextVariable(this.zipf, this.random, this.variableCount);
+	}
+
+	// cumulative distribution of adb.load.skew over the variables, null for uniform; shared with ConcurrentLoad
+	static double[] ZipfTable(Config config, int variableCount) {
+		if (config.Get("adb.load.skew", "uniform").equals("zipf") == false) {
+			return null;
+		}
+		double theta = config.GetDouble("adb.load.theta", 0.99);
+		double[] zipf = new double[variableCount];
+		double sum = 0;
+		for (int rank = 1; rank <= variableCount; rank++) {
+			sum += 1.0 / Math.pow(rank, theta);
+			zipf[rank - 1] = sum;
+		}
+		for (int i = 0; i < variableCount; i++) {
+			zipf[i] /= sum;
+		}
+		return zipf;
+	}
+
+	static int NextVariable(double[] zipf, Random random, int variableCount) {
+		if (zipf == null) {
+			return 1 + random.nextInt(variableCount);
+		}
+		int rank = Arrays.binarySearch(zipf, random.nextDouble());
+		return 1 + (rank < 0 ? Math.min(-rank - 1, variableCount - 1) : rank);
+	}
+
+	private boolean PickUpSite() {
+		int up = 0;
+		for (int site = 1; site <= this.siteCount; site++) {
+			if (this.siteDown[site] == false) {
+				up++;
+			}
+		}
+		if (up == 0) {
+			return false;
+		}
+		int pick = this.random.nextInt(up);
+		for (int site = 1; site <= this.siteCount; site++) {
+			if (this.siteDown[site] == false && pick-- == 0) {
+				this.siteID = site;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static int Percentile(int[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[Math.min(sorted.length - 1, Math.max(0, (int) Math.ceil(p * sorted.length) - 1))];
+	}
+
+	static long Percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[Math.min(sorted.length - 1, Math.max(0, (int) Math.ceil(p * sorted.length) - 1))];
+	}
+}
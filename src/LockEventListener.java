@@ -0,0 +1,17 @@
+/*
+ * Date: 2026-10-17
+ * Description: callback from a DataManager to whoever schedules blocked operations
+ *
+ * 1. Name: VariableChanged
+ * 	  Input: siteID, variableID
+ *    Description: the lock holders, the waitlist or the upToDate flag of the variable changed on the site
+ *
+ * 2. Name: SiteChanged
+ * 	  Input: siteID
+ *    Description: the site failed or recovered, every variable on it may have changed
+ * */
+public interface LockEventListener {
+	public void VariableChanged(int siteID, int variableID);
+	
+	public void SiteChanged(int siteID);
+}
@@ -0,0 +1,94 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Date: 2026-10-17
+ * Description: counters and histograms of the TransactionManager, always recorded
+ *
+ * 1. Name: Dump
+ *    Output: the statistics as text
+ * */
+public class ManagerMetrics implements ManagerMetricsMBean {
+	public final LongAdder deadlockAborts = new LongAdder();
+	public final LongAdder siteFailureAborts = new LongAdder();
+	public final LongAdder preventionAborts = new LongAdder();
+	public final LongAdder validationAborts = new LongAdder();
+	public final LongAdder readProbesRefused = new LongAdder();
+	public final LongAdder catchUpStale = new LongAdder();
+	public final LongAdder catchUpVersions = new LongAdder();
+	public final Histogram detectDeadLockNanos = new Histogram();
+	public final Histogram pendingOperations = new Histogram();
+	public final Histogram groupCommitSize = new Histogram(); // transactions per group, only with adb.groupcommit
+	public volatile long pendingNow;
+
+	public long getDeadlockAborts() {
+		return this.deadlockAborts.sum();
+	}
+
+	public long getSiteFailureAborts() {
+		return this.siteFailureAborts.sum();
+	}
+
+	public long getPreventionAborts() {
+		return this.preventionAborts.sum();
+	}
+
+	public long getValidationAborts() {
+		return this.validationAborts.sum();
+	}
+
+	public long getReadProbesRefused() {
+		return this.readProbesRefused.sum();
+	}
+
+	public long getCatchUpStaleCopies() {
+		return this.catchUpStale.sum();
+	}
+
+	public long getCatchUpVersions() {
+		return this.catchUpVersions.sum();
+	}
+
+	public long getPendingOperations() {
+		return this.pendingNow;
+	}
+
+	public long getPendingOperationsMax() {
+		return this.pendingOperations.Max();
+	}
+
+	public long getDetectDeadLockCount() {
+		return this.detectDeadLockNanos.Count();
+	}
+
+	public long getDetectDeadLockP99Nanos() {
+		return this.detectDeadLockNanos.Percentile(0.99);
+	}
+
+	public long getGroupCommitCount() {
+		return this.groupCommitSize.Count();
+	}
+
+	public double getGroupCommitMeanSize() {
+		return this.groupCommitSize.Mean();
+	}
+
+	public String Dump() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("transaction manager - deadlock aborts ").append(getDeadlockAborts())
+			.append(", site failure aborts ").append(getSiteFailureAborts())
+			.append(", prevention aborts ").append(getPreventionAborts())
+			.append(", validation aborts ").append(getValidationAborts())
+			.append(", pending operations ").append(getPendingOperations())
+			.append(", refused read probes ").append(getReadProbesRefused()).append('\n');
+		if (getCatchUpVersions() > 0 || getCatchUpStaleCopies() > 0) {
+			sb.append("  catch-up: ").append(getCatchUpStaleCopies()).append(" copies still stale, ")
+				.append(getCatchUpVersions()).append(" versions shipped\n");
+		}
+		sb.append("  DetectDeadLock ns: ").append(this.detectDeadLockNanos.Describe()).append('\n');
+		sb.append("  pending operations per tick: ").append(this.pendingOperations.Describe()).append('\n');
+		if (getGroupCommitCount() > 0) {
+			sb.append("  group commit size: ").append(this.groupCommitSize.Describe()).append('\n');
+		}
+		return sb.toString();
+	}
+}
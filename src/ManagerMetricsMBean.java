@@ -0,0 +1,53 @@
+/*
+ * Date: 2026-10-17
+ * Description: JMX view of the TransactionManager, registered as adb:type=TransactionManager
+ *
+ * 1. Name: getDeadlockAborts / getSiteFailureAborts / getPreventionAborts / getValidationAborts
+ *    Output: transactions aborted as deadlock victims / because a site they wrote or read failed / by wait-die
+ *    or wound-wait / by the commit-time validation of the optimistic mode
+ *
+ * 2. Name: getPendingOperations
+ *    Output: reads and writes queued or parked at the end of the last tick
+ *
+ * 3. Name: getReadProbesRefused
+ *    Output: read calls to a site that did not produce the value (lock conflict or stale snapshot)
+ *
+ * 4. Name: getCatchUpStaleCopies / getCatchUpVersions
+ *    Output: replicated copies of recovered sites that catch-up has not made readable yet / versions shipped to them
+ *
+ * 5. Name: getDetectDeadLock* / getPendingOperations* / getGroupCommit*
+ *    Output: histogram statistics, time spent in DetectDeadLock, pending operations sampled every tick,
+ *    transactions per group commit
+ *
+ * 6. Name: Dump
+ *    Output: every statistic as text
+ * */
+public interface ManagerMetricsMBean {
+	public long getDeadlockAborts();
+
+	public long getSiteFailureAborts();
+
+	public long getPreventionAborts();
+
+	public long getValidationAborts();
+
+	public long getReadProbesRefused();
+
+	public long getCatchUpStaleCopies();
+
+	public long getCatchUpVersions();
+
+	public long getPendingOperations();
+
+	public long getPendingOperationsMax();
+
+	public long getDetectDeadLockCount();
+
+	public long getDetectDeadLockP99Nanos();
+
+	public long getGroupCommitCount();
+
+	public double getGroupCommitMeanSize();
+
+	public String Dump();
+}
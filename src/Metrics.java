@@ -0,0 +1,49 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ * Date: 2026-10-17
+ * Description: exposes the ManagerMetrics and the SiteMetrics of every site. Recording is always on, JMX
+ *    registration (adb.metrics.jmx) and the dump at exit (adb.metrics.dump) are asked for in Config.
+ *
+ * 1. Name: Register
+ * 	  Input: TransactionManager metrics, Site array
+ *    Description: register adb:type=TransactionManager and adb:type=Site,site=N on the platform MBean server,
+ *    every bean also has a Dump operation for jconsole / jmxterm
+ *
+ * 2. Name: Dump
+ * 	  Input: TransactionManager metrics, Site array, stream (sites in other processes register and dump their own)
+ *
+ * 3. Name: RegisterSite
+ * 	  Input: DataManager
+ *    Description: the bean of one site, used by a SiteServer for the DataManager it serves
+ * */
+public class Metrics {
+	public static void Register(ManagerMetrics manager, Site[] DM) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(manager, new ObjectName("adb:type=TransactionManager"));
+		for (int i = 1; i < DM.length; i++) {
+			if (DM[i] instanceof DataManager) {
+				RegisterSite((DataManager) DM[i]);
+			}
+		}
+	}
+
+	public static void RegisterSite(DataManager site) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(site.metrics, new ObjectName("adb:type=Site,site=" + site.siteID));
+	}
+
+	// remote sites keep their metrics in their own process
+	public static void Dump(ManagerMetrics manager, Site[] DM, PrintStream out) {
+		out.print(manager.Dump());
+		for (int i = 1; i < DM.length; i++) {
+			if (DM[i] instanceof DataManager) {
+				out.print(((DataManager) DM[i]).metrics.Dump());
+			}
+		}
+		out.flush();
+	}
+}
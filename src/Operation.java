@@ -7,13 +7,21 @@ public class Operation {
     public enum OperationType {
         READ,
         WRITE,
-        READONLY
+        READONLY,
+        SCAN,
+        MREAD,
+        MWRITE
     }
     public int transactionID;
     public int variableID;
     public OperationType operationType;
     public int valueToWrite;
     public int timestamp;
+    public long sequence; // arrival order, assigned by TransactionManager when queued
+    public int lastVariableID; // end of the range of a SCAN, variableID is its start
+    // variables of an MREAD / MWRITE (and the values of an MWRITE), variableID and lastVariableID are their smallest and largest
+    public int[] variableIDs;
+    public int[] values;
     
     public Operation(int transID, int varID, OperationType OpType, int value, int ts) {
     	this.transactionID = transID;
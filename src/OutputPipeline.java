@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * Date: 2026-10-17
+ * Description: output stage shared by the TransactionManager and the DataManagers. Text is encoded straight
+ *    into a reusable byte buffer, full buffers are handed to a background thread that writes them in order,
+ *    and the stream is only flushed at the configured boundary.
+ *
+ *    tick   hand over the buffer at the end of every tick (default, keeps interactive use responsive)
+ *    input  hand over only when the buffer is full and at the end of the input
+ *    size   same as input, the threshold is the only boundary besides closing
+ *
+ *    Callers that share one pipeline across threads hold its monitor while they append a whole line.
+ *
+ * 1. Name: OutputPipeline (constructor)
+ * 	  Input: output stream, flush boundary, buffer size in bytes
+ *
+ * 2. Name: Text / Int / Bytes / NewLine / Line
+ * 	  Input: string / number / encoded text (output relayed from a remote site) / none / string
+ *    Description: append to the current buffer, numbers are written digit by digit without a String
+ *
+ * 3. Name: EndTick
+ *    Description: boundary of one tick, hands the buffer over in tick mode
+ *
+ * 4. Name: Flush / Close
+ *    Description: hand the buffer over and wait until everything is written / then stop the writer thread
+ * */
+public class OutputPipeline {
+	public enum FlushMode {
+		TICK,
+		INPUT,
+		SIZE
+	}
+
+	private static class Batch {
+		public byte[] data;
+		public int length;
+
+		public Batch(int capacity) {
+			this.data = new byte[capacity];
+			this.length = 0;
+		}
+	}
+
+	private final static int BATCHCNT = 4;
+	private final static byte[] NEWLINE = System.lineSeparator().getBytes();
+
+	private OutputStream out;
+	private FlushMode mode;
+	private int threshold;
+	private Batch current;
+	private BlockingQueue<Batch> free;
+	private BlockingQueue<Batch> pending;
+	private Thread writerThread;
+	private final Object writtenMonitor = new Object();
+	private long handedOver;
+	private long written;
+	private volatile IOException failure;
+
+	public OutputPipeline(OutputStream out, FlushMode mode, int threshold) {
+		this.out = out;
+		this.mode = mode;
+		this.threshold = Math.max(threshold, 64);
+		this.free = new ArrayBlockingQueue<Batch>(BATCHCNT);
+		this.pending = new ArrayBlockingQueue<Batch>(BATCHCNT + 1);
+		for (int i = 0; i < BATCHCNT - 1; i++) {
+			this.free.add(new Batch(this.threshold + 256));
+		}
+		this.current = new Batch(this.threshold + 256);
+		this.handedOver = 0;
+		this.written = 0;
+		this.writerThread = new Thread(new Runnable() {
+			public void run() {
+				WriteLoop();
+			}
+		}, "output-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	public static FlushMode ParseMode(String mode) {
+		return FlushMode.valueOf(mode.trim().toUpperCase());
+	}
+
+	public void Text(String text) {
+		int length = text.length();
+		Reserve(length);
+		byte[] data = this.current.data;
+		int position = this.current.length;
+		for (int i = 0; i < length; i++) {
+			// every line this system prints is ASCII
+			data[position++] = (byte) text.charAt(i);
+		}
+		this.current.length = position;
+		CheckThreshold();
+	}
+
+	public void Int(int value) {
+		Reserve(11);
+		byte[] data = this.current.data;
+		int position = this.current.length;
+		long number = value;
+		if (number < 0) {
+			data[position++] = '-';
+			number = -number;
+		}
+		int digits = 1;
+		for (long bound = 10; bound <= number; bound *= 10) {
+			digits++;
+		}
+		for (int i = position + digits - 1; i >= position; i--) {
+			data[i] = (byte) ('0' + number % 10);
+			number /= 10;
+		}
+		this.current.length = position + digits;
+		CheckThreshold();
+	}
+
+	public void Bytes(byte[] data, int offset, int length) {
+		Reserve(length);
+		System.arraycopy(data, offset, this.current.data, this.current.length, length);
+		this.current.length += length;
+		CheckThreshold();
+	}
+
+	public void NewLine() {
+		Reserve(NEWLINE.length);
+		System.arraycopy(NEWLINE, 0, this.current.data, this.current.length, NEWLINE.length);
+		this.current.length += NEWLINE.length;
+		CheckThreshold();
+	}
+
+	public void Line(String text) {
+		Text(text);
+		NewLine();
+	}
+
+	public void EndTick() {
+		if (this.mode == FlushMode.TICK) {
+			HandOver();
+		}
+	}
+
+	public void Flush() throws IOException {
+		long target = HandOver();
+		synchronized (this.writtenMonitor) {
+			while (this.written < target && this.failure == null) {
+				try {
+					this.writtenMonitor.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		if (this.failure != null) {
+			throw this.failure;
+		}
+	}
+
+	public void Close() throws IOException {
+		Flush();
+		this.writerThread.interrupt();
+		this.out.close();
+	}
+
+	// an append that does not fit starts a new buffer, text longer than a buffer gets a buffer of its own
+	private void Reserve(int length) {
+		if (this.current.length + length > this.current.data.length) {
+			HandOver();
+			if (length > this.current.data.length) {
+				this.current.data = new byte[length];
+			}
+		}
+	}
+
+	private void CheckThreshold() {
+		if (this.current.length >= this.threshold) {
+			HandOver();
+		}
+	}
+
+	// give the current buffer to the writer thread, returns the number of batches handed over so far
+	private long HandOver() {
+		if (this.current.length == 0) {
+			return this.handedOver;
+		}
+		try {
+			// blocks while every other buffer is still queued, which bounds the memory held by slow output
+			Batch next = this.free.take();
+			this.pending.put(this.current);
+			this.handedOver++;
+			this.current = next;
+			this.current.length = 0;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return this.handedOver;
+	}
+
+	private void WriteLoop() {
+		while (true) {
+			Batch batch;
+			try {
+				batch = this.pending.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			try {
+				if (this.failure == null) {
+					this.out.write(batch.data, 0, batch.length);
+					this.out.flush();
+				}
+			} catch (IOException e) {
+				this.failure = e;
+			}
+			this.free.add(batch);
+			synchronized (this.writtenMonitor) {
+				this.written++;
+				this.writtenMonitor.notifyAll();
+			}
+		}
+	}
+}
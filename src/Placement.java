@@ -0,0 +1,156 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+ * Date: 2026-10-17
+ * Description: policy deciding which sites hold a copy of a variable, turned into a PlacementTable at startup
+ *
+ * 1. Name: Sites
+ * 	  Input: variableID, siteCount, output buffer of at least siteCount entries
+ *    Output: number of sites written to the buffer, in ascending order, each in 1..siteCount
+ *
+ * 2. Name: Default
+ *    Description: the original rule, even variables on every site, odd variables on site 1 + (variableID % siteCount)
+ *
+ * 3. Name: Hash
+ * 	  Input: number of replicas
+ *    Description: replicas consecutive sites starting from a hash of the variableID
+ *
+ * 4. Name: Range
+ * 	  Input: number of replicas, variableCount
+ *    Description: contiguous ranges of variables per site, each range also copied to the next replicas - 1 sites
+ *
+ * 5. Name: Explicit
+ * 	  Input: file of "variableID=site,site,..." lines, siteCount, variableCount, fallback policy for the variables not listed
+ *    Description: a malformed line, an unknown variable or site, or a repeated one fails with the line number
+ * */
+public interface Placement {
+	public int Sites(int variableID, int siteCount, int[] out);
+
+	public static class Default implements Placement {
+		public int Sites(int variableID, int siteCount, int[] out) {
+			if (variableID % 2 == 0) {
+				for (int i = 0; i < siteCount; i++) {
+					out[i] = i + 1;
+				}
+				return siteCount;
+			}
+			out[0] = 1 + (variableID % siteCount);
+			return 1;
+		}
+	}
+
+	public static class Hash implements Placement {
+		private int replicas;
+
+		public Hash(int replicas) {
+			this.replicas = replicas;
+		}
+
+		public int Sites(int variableID, int siteCount, int[] out) {
+			int count = Math.min(this.replicas, siteCount);
+			int mixed = variableID * 0x9E3779B9;
+			int first = ((mixed ^ (mixed >>> 16)) & Integer.MAX_VALUE) % siteCount;
+			for (int i = 0; i < count; i++) {
+				out[i] = 1 + (first + i) % siteCount;
+			}
+			Arrays.sort(out, 0, count);
+			return count;
+		}
+	}
+
+	public static class Range implements Placement {
+		private int replicas;
+		private int variableCount;
+
+		public Range(int replicas, int variableCount) {
+			this.replicas = replicas;
+			this.variableCount = variableCount;
+		}
+
+		public int Sites(int variableID, int siteCount, int[] out) {
+			int count = Math.min(this.replicas, siteCount);
+			int first = (int) ((long) (variableID - 1) * siteCount / this.variableCount);
+			for (int i = 0; i < count; i++) {
+				out[i] = 1 + (first + i) % siteCount;
+			}
+			Arrays.sort(out, 0, count);
+			return count;
+		}
+	}
+
+	public static class Explicit implements Placement {
+		private HashMap<Integer, int[]> sites;
+		private Placement fallback;
+
+		public Explicit(String filename, int siteCount, int variableCount, Placement fallback) throws IOException {
+			this.sites = new HashMap<Integer, int[]>();
+			this.fallback = fallback;
+			BufferedReader reader = new BufferedReader(new FileReader(filename));
+			try {
+				String line;
+				int lineNumber = 0;
+				while ((line = reader.readLine()) != null) {
+					lineNumber++;
+					line = line.replaceAll(" ", "");
+					int idx = line.indexOf("//");
+					if (idx != -1) {
+						line = line.substring(0, idx);
+					}
+					if (line.length() == 0) {
+						continue;
+					}
+					String where = filename + ":" + lineNumber + ": ";
+					String[] parts = line.split("=", -1);
+					if (parts.length != 2 || parts[1].length() == 0) {
+						throw new IOException(where + "expected variableID=site,site,... but got " + line);
+					}
+					int variableID = ParseID(parts[0].startsWith("x") ? parts[0].substring(1) : parts[0], where);
+					if (variableID < 1 || variableID > variableCount) {
+						throw new IOException(where + "no variable x" + variableID + " among " + variableCount);
+					}
+					if (this.sites.containsKey(variableID)) {
+						throw new IOException(where + "x" + variableID + " is placed twice");
+					}
+					String[] ids = parts[1].split(",", -1);
+					int[] list = new int[ids.length];
+					for (int i = 0; i < ids.length; i++) {
+						list[i] = ParseID(ids[i], where);
+						if (list[i] < 1 || list[i] > siteCount) {
+							throw new IOException(where + "no site " + list[i] + " among " + siteCount);
+						}
+					}
+					Arrays.sort(list);
+					for (int i = 1; i < list.length; i++) {
+						if (list[i] == list[i - 1]) {
+							throw new IOException(where + "site " + list[i] + " listed twice");
+						}
+					}
+					this.sites.put(variableID, list);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		private static int ParseID(String id, String where) throws IOException {
+			try {
+				return Integer.parseInt(id);
+			} catch (NumberFormatException e) {
+				throw new IOException(where + "not a number: " + id);
+			}
+		}
+
+		public int Sites(int variableID, int siteCount, int[] out) {
+			int[] list = this.sites.get(variableID);
+			if (list == null) {
+				return this.fallback.Sites(variableID, siteCount, out);
+			}
+			System.arraycopy(list, 0, out, 0, list.length);
+			return list.length;
+		}
+	}
+}
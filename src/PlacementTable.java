@@ -0,0 +1,150 @@
+import java.util.Arrays;
+
+/*
+ * Date: 2026-10-17
+ * Description: placement of every variable computed once at startup, stored as two compressed sparse rows
+ *    (variable -> sites and site -> variables) of primitive ints
+ *
+ * 1. Name: Build
+ * 	  Input: placement policy, siteCount, variableCount
+ *    Output: PlacementTable
+ *
+ * 2. Name: Start / End / SiteAt
+ * 	  Input: variableID / position
+ *    Description: sites of a variable are SiteAt(k) for Start(variableID) <= k < End(variableID), ascending
+ *
+ * 3. Name: VariablesAt
+ * 	  Input: siteID
+ *    Output: sorted copy of the variables held by the site
+ *
+ * 4. Name: IsReplicated
+ * 	  Input: variableID
+ *    Output: whether more than one site holds the variable
+ *
+ * 5. Name: Holds / Position
+ * 	  Input: variableID, siteID
+ *    Output: whether the site holds a copy of the variable / position of that copy, -1 if none
+ *
+ * 6. Name: PositionsAt / PositionCount
+ * 	  Input: siteID / none
+ *    Output: positions k of the copies held by the site, in the order of VariablesAt / number of copies in total,
+ *    a position names one copy (variable, SiteAt(k)) and is what per-copy tables such as ReplicaBitmap index by
+ *
+ * 7. Name: SiteFrom / SiteEnd / SiteVariableAt / SitePositionAt
+ * 	  Input: siteID, variableID / siteID / index
+ *    Output: index of the first copy on the site of a variable >= variableID, binary searched in place / end of the
+ *    site's copies / variable and position of the copy at that index, so a range is walked without copying the row
+ * */
+public class PlacementTable {
+	public final int siteCount;
+	public final int variableCount;
+	private int[] variableOffsets; // variableOffsets[v] .. variableOffsets[v+1] index into sites
+	private int[] sites;
+	private int[] siteOffsets; // siteOffsets[s] .. siteOffsets[s+1] index into siteVariables
+	private int[] siteVariables;
+	private int[] sitePositions; // parallel to siteVariables, position of the copy in sites
+
+	private PlacementTable(int siteCount, int variableCount) {
+		this.siteCount = siteCount;
+		this.variableCount = variableCount;
+	}
+
+	public static PlacementTable Build(Placement placement, int siteCount, int variableCount) {
+		PlacementTable table = new PlacementTable(siteCount, variableCount);
+		int[] buffer = new int[siteCount];
+		int[] perSite = new int[siteCount + 2];
+		table.variableOffsets = new int[variableCount + 2];
+		int[] sites = new int[Math.max(16, variableCount)];
+		int total = 0;
+		for (int variableID = 1; variableID <= variableCount; variableID++) {
+			table.variableOffsets[variableID] = total;
+			int count = placement.Sites(variableID, siteCount, buffer);
+			if (total + count > sites.length) {
+				sites = Arrays.copyOf(sites, Math.max(sites.length * 2, total + count));
+			}
+			for (int i = 0; i < count; i++) {
+				sites[total++] = buffer[i];
+				perSite[buffer[i]]++;
+			}
+		}
+		table.variableOffsets[variableCount + 1] = total;
+		table.sites = (total == sites.length) ? sites : Arrays.copyOf(sites, total);
+
+		table.siteOffsets = new int[siteCount + 2];
+		for (int siteID = 1; siteID <= siteCount; siteID++) {
+			table.siteOffsets[siteID + 1] = table.siteOffsets[siteID] + perSite[siteID];
+		}
+		table.siteVariables = new int[total];
+		table.sitePositions = new int[total];
+		int[] next = Arrays.copyOf(table.siteOffsets, siteCount + 2);
+		for (int variableID = 1; variableID <= variableCount; variableID++) {
+			for (int k = table.variableOffsets[variableID]; k < table.variableOffsets[variableID + 1]; k++) {
+				table.sitePositions[next[table.sites[k]]] = k;
+				table.siteVariables[next[table.sites[k]]++] = variableID;
+			}
+		}
+		return table;
+	}
+
+	public int Start(int variableID) {
+		return this.variableOffsets[variableID];
+	}
+
+	public int End(int variableID) {
+		return this.variableOffsets[variableID + 1];
+	}
+
+	public int SiteAt(int position) {
+		return this.sites[position];
+	}
+
+	public boolean IsReplicated(int variableID) {
+		return End(variableID) - Start(variableID) > 1;
+	}
+
+	public boolean Holds(int variableID, int siteID) {
+		return Position(variableID, siteID) >= 0;
+	}
+
+	public int Position(int variableID, int siteID) {
+		for (int k = Start(variableID); k < End(variableID); k++) {
+			if (this.sites[k] == siteID) {
+				return k;
+			}
+		}
+		return -1;
+	}
+
+	public int VariableCountAt(int siteID) {
+		return this.siteOffsets[siteID + 1] - this.siteOffsets[siteID];
+	}
+
+	public int[] VariablesAt(int siteID) {
+		return Arrays.copyOfRange(this.siteVariables, this.siteOffsets[siteID], this.siteOffsets[siteID + 1]);
+	}
+
+	public int[] PositionsAt(int siteID) {
+		return Arrays.copyOfRange(this.sitePositions, this.siteOffsets[siteID], this.siteOffsets[siteID + 1]);
+	}
+
+	public int SiteFrom(int siteID, int variableID) {
+		int index = Arrays.binarySearch(this.siteVariables, this.siteOffsets[siteID], this.siteOffsets[siteID + 1], variableID);
+		return index < 0 ? -index - 1 : index;
+	}
+
+	public int SiteEnd(int siteID) {
+		return this.siteOffsets[siteID + 1];
+	}
+
+	public int SiteVariableAt(int index) {
+		return this.siteVariables[index];
+	}
+
+	public int SitePositionAt(int index) {
+		return this.sitePositions[index];
+	}
+
+	public int PositionCount() {
+		return this.sites.length;
+	}
+}
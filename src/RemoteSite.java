@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Date: 2026-10-17
+ * Description: Site whose DataManager lives in a SiteServer, every call is one request over the SiteTransport.
+ *    A call waits for its reply and replays the recorded events in the calling thread before returning, so the
+ *    wait-for graph, the listener and the output see them in the same order as with an in-process site.
+ *    SetSnapshotHorizon is the exception, nothing comes back from it, so it is sent without waiting and simply
+ *    goes ahead of the next request on the connection.
+ *
+ *    Fail and Recover are requests too: the site drops its locks and marks its copies stale exactly as in process,
+ *    and the connection stays up so a failed site can still be dumped. Attach tells the server whether to report
+ *    wait-for edges at all, they are not sent when the TransactionManager prevents deadlocks instead.
+ *
+ * 1. Name: RemoteSite (constructor)
+ * 	  Input: siteID, SiteTransport
+ *
+ * 2. Name: Call
+ * 	  Input: future reply (and the arrays that take exported versions or blocking transactions)
+ *    Output: reply positioned at its result (ok byte, value)
+ *    Description: wait for the reply and replay its events, a failure on the site is rethrown here
+ * */
+public class RemoteSite implements Site {
+	private int siteID;
+	private SiteTransport transport;
+	private OutputPipeline writer;
+	private LockEventListener listener;
+	private WaitForGraph waitGraph;
+
+	public RemoteSite(int siteID, SiteTransport transport) {
+		this.siteID = siteID;
+		this.transport = transport;
+	}
+
+	public int SiteID() {
+		return this.siteID;
+	}
+
+	public void Attach(OutputPipeline writer, LockEventListener listener, WaitForGraph waitGraph) {
+		this.writer = writer;
+		this.listener = listener;
+		this.waitGraph = waitGraph;
+		Call(this.transport.Submit(this.siteID, SiteProtocol.EDGES, waitGraph != null ? 1 : 0));
+	}
+
+	public void Fail(int timestamp) {
+		Call(this.transport.Submit(this.siteID, SiteProtocol.FAIL, timestamp));
+	}
+
+	public void Recover(int timestamp) {
+		Call(this.transport.Submit(this.siteID, SiteProtocol.RECOVER, timestamp));
+	}
+
+	public void DumpAll() {
+		Call(this.transport.Submit(this.siteID, SiteProtocol.DUMPALL));
+	}
+
+	public void DumpOne(int variableID) {
+		Call(this.transport.Submit(this.siteID, SiteProtocol.DUMPONE, variableID));
+	}
+
+	public boolean AcquireReadLock(int transactionID, int variableID) {
+		return Call(this.transport.Submit(this.siteID, SiteProtocol.READLOCK, transactionID, variableID)).get() == 1;
+	}
+
+	public boolean AcquireWriteLock(int transactionID, int variableID) {
+		return Call(this.transport.Submit(this.siteID, SiteProtocol.WRITELOCK, transactionID, variableID)).get() == 1;
+	}
+
+	public boolean RollbackWriteLock(int transactionID, int variableID) {
+		return Call(this.transport.Submit(this.siteID, SiteProtocol.ROLLBACK, transactionID, variableID)).get() == 1;
+	}
+
+	public OperationResponse Read(Operation operation) {
+		return Response(Call(this.transport.Submit(this.siteID, SiteProtocol.READ, operation)));
+	}
+
+	public OperationResponse ReadOnly(Operation operation) {
+		return Response(Call(this.transport.Submit(this.siteID, SiteProtocol.READONLY, operation)));
+	}
+
+	public OperationResponse ReadCommitted(Operation operation) {
+		return Response(Call(this.transport.Submit(this.siteID, SiteProtocol.READCOMMITTED, operation)));
+	}
+
+	public OperationResponse Write(Operation operation) {
+		return Response(Call(this.transport.Submit(this.siteID, SiteProtocol.WRITE, operation)));
+	}
+
+	public void Commit(int transactionID, int timestamp) {
+		Call(this.transport.Submit(this.siteID, SiteProtocol.COMMIT, transactionID, timestamp));
+	}
+
+	public void CommitGroup(int[] transactionIDs, int count, int timestamp) {
+		Call(this.transport.Submit(this.siteID, SiteProtocol.COMMITGROUP, Arguments(timestamp, transactionIDs, null, count)));
+	}
+
+	public void CancelWaiting(int transactionID) {
+		Call(this.transport.Submit(this.siteID, SiteProtocol.CANCELWAITING, transactionID));
+	}
+
+	public void Abort(int transactionID) {
+		Call(this.transport.Submit(this.siteID, SiteProtocol.ABORT, transactionID));
+	}
+
+	public void SetSnapshotHorizon(int horizon) {
+		this.transport.Submit(this.siteID, SiteProtocol.HORIZON, horizon);
+	}
+
+	public int ExportVersions(int variableID, int after, int limit, int[] commitTimes, int[] values) {
+		ByteBuffer reply = Call(this.transport.Submit(this.siteID, SiteProtocol.EXPORT, variableID, after, limit), commitTimes, values);
+		reply.get();
+		return reply.getInt();
+	}
+
+	public boolean InstallVersions(int variableID, int count, int[] commitTimes, int[] values, boolean last) {
+		int[] arguments = new int[3 + 2 * count];
+		arguments[0] = variableID;
+		arguments[1] = count;
+		arguments[2] = last ? 1 : 0;
+		for (int i = 0; i < count; i++) {
+			arguments[3 + 2 * i] = commitTimes[i];
+			arguments[4 + 2 * i] = values[i];
+		}
+		return Call(this.transport.Submit(this.siteID, SiteProtocol.INSTALL, arguments)).get() == 1;
+	}
+
+	public int Blockers(int transactionID, int first, int last, int[] blockers) {
+		ByteBuffer reply = Call(this.transport.Submit(this.siteID, SiteProtocol.BLOCKERS, transactionID, first, last, blockers.length), blockers, null);
+		reply.get();
+		return reply.getInt();
+	}
+
+	public boolean AcquireRangeReadLock(int transactionID, int first, int last) {
+		return Call(this.transport.Submit(this.siteID, SiteProtocol.RANGELOCK, transactionID, first, last)).get() == 1;
+	}
+
+	public int ReadRange(int transactionID, int first, int last, int[] variableIDs, int[] values) {
+		ByteBuffer reply = Call(this.transport.Submit(this.siteID, SiteProtocol.RANGEREAD, transactionID, first, last, variableIDs.length), variableIDs, values);
+		reply.get();
+		return reply.getInt();
+	}
+
+	public int ReadBatch(int transactionID, int[] variableIDs, int count, int[] read, int[] values) {
+		ByteBuffer reply = Call(this.transport.Submit(this.siteID, SiteProtocol.READBATCH, Arguments(transactionID, variableIDs, null, count)), read, values);
+		reply.get();
+		return reply.getInt();
+	}
+
+	public boolean WriteBatch(int transactionID, int[] variableIDs, int[] values, int count) {
+		return Call(this.transport.Submit(this.siteID, SiteProtocol.WRITEBATCH, Arguments(transactionID, variableIDs, values, count))).get() == 1;
+	}
+
+	public void UndoBatch(int transactionID) {
+		Call(this.transport.Submit(this.siteID, SiteProtocol.UNDOBATCH, transactionID));
+	}
+
+	public void Close() throws IOException {
+		Call(this.transport.Submit(this.siteID, SiteProtocol.CLOSE));
+	}
+
+	private ByteBuffer Call(CompletableFuture<ByteBuffer> future) {
+		return Call(future, null, null);
+	}
+
+	// exported versions (or what a range or batch read returned) are collected into commitTimes and values, blocking transactions into commitTimes
+	private ByteBuffer Call(CompletableFuture<ByteBuffer> future, int[] commitTimes, int[] values) {
+		ByteBuffer reply = SiteTransport.Join(future);
+		int versions = 0;
+		int blockers = 0;
+		while (true) {
+			byte type = reply.get();
+			switch (type) {
+			case SiteProtocol.END:
+				return reply;
+			case SiteProtocol.EDGEADD:
+				this.waitGraph.AddEdge(reply.getInt(), reply.getInt());
+				break;
+			case SiteProtocol.EDGEREMOVE:
+				this.waitGraph.RemoveEdge(reply.getInt(), reply.getInt());
+				break;
+			case SiteProtocol.VARIABLECHANGED:
+				this.listener.VariableChanged(this.siteID, reply.getInt());
+				reply.getInt();
+				break;
+			case SiteProtocol.SITECHANGED:
+				reply.getInt();
+				reply.getInt();
+				this.listener.SiteChanged(this.siteID);
+				break;
+			case SiteProtocol.VERSION:
+				commitTimes[versions] = reply.getInt();
+				values[versions] = reply.getInt();
+				versions++;
+				break;
+			case SiteProtocol.BLOCKER:
+				commitTimes[blockers++] = reply.getInt();
+				reply.getInt();
+				break;
+			case SiteProtocol.OUTPUT: {
+				int length = reply.getInt();
+				synchronized (this.writer) {
+					this.writer.Bytes(reply.array(), reply.position(), length);
+				}
+				reply.position(reply.position() + length);
+				break;
+			}
+			case SiteProtocol.ERROR: {
+				byte[] message = new byte[reply.getInt()];
+				reply.get(message);
+				throw new IllegalStateException("site " + this.siteID + ": " + new String(message));
+			}
+			default:
+				throw new IllegalStateException("site " + this.siteID + ": unknown event " + type);
+			}
+		}
+	}
+
+	// first argument (transactionID or timestamp), count, then the ids (with their values when there are any)
+	private static int[] Arguments(int transactionID, int[] variableIDs, int[] values, int count) {
+		int width = values == null ? 1 : 2;
+		int[] arguments = new int[2 + width * count];
+		arguments[0] = transactionID;
+		arguments[1] = count;
+		for (int i = 0; i < count; i++) {
+			arguments[2 + width * i] = variableIDs[i];
+			if (values != null) {
+				arguments[3 + width * i] = values[i];
+			}
+		}
+		return arguments;
+	}
+
+	private static OperationResponse Response(ByteBuffer reply) {
+		boolean success = reply.get() == 1;
+		return new OperationResponse(success, reply.getInt());
+	}
+}
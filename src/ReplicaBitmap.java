@@ -0,0 +1,36 @@
+import java.util.Arrays;
+
+/*
+ * Date: 2026-10-17
+ * Description: one bit per copy of every variable, indexed by PlacementTable position, telling whether the
+ *    TransactionManager may read that copy: its site is up and the copy is up to date. Kept by the
+ *    TransactionManager from what it already sees (fail, recover, commit, catch-up), so reads skip copies
+ *    that would refuse them without a call to the site. All the copies of a variable are adjacent positions,
+ *    so the copies of a variable usually share one word.
+ *
+ * 1. Name: ReplicaBitmap (constructor)
+ * 	  Input: number of positions, every copy starts readable
+ *
+ * 2. Name: Set / Clear / IsSet
+ * 	  Input: position
+ * */
+public class ReplicaBitmap {
+	private long[] words;
+
+	public ReplicaBitmap(int positions) {
+		this.words = new long[(positions + 63) >>> 6];
+		Arrays.fill(this.words, -1L);
+	}
+
+	public void Set(int position) {
+		this.words[position >>> 6] |= 1L << position;
+	}
+
+	public void Clear(int position) {
+		this.words[position >>> 6] &= ~(1L << position);
+	}
+
+	public boolean IsSet(int position) {
+		return (this.words[position >>> 6] & (1L << position)) != 0;
+	}
+}
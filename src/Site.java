@@ -0,0 +1,72 @@
+import java.io.IOException;
+
+/*
+ * Date: 2026-10-17
+ * Description: what the TransactionManager needs from a site. DataManager is the in-process site, RemoteSite
+ *    reaches a DataManager in a SiteServer (another process or a loopback server) through SiteProtocol.
+ *    See DataManager for what every call does.
+ *
+ * 1. Name: SiteID
+ *
+ * 2. Name: Attach
+ * 	  Input: output pipeline, listener of lock events, shared wait-for graph (null: keep no wait-for edges)
+ *    Description: where the site sends its output, its lock events and its wait-for edges
+ *
+ * 3. Name: Close
+ *    Description: end of the run, closes the log of the site (and the connection of a remote one)
+ * */
+public interface Site {
+	public int SiteID();
+
+	public void Attach(OutputPipeline writer, LockEventListener listener, WaitForGraph waitGraph);
+
+	public void Fail(int timestamp);
+
+	public void Recover(int timestamp);
+
+	public void DumpAll();
+
+	public void DumpOne(int variableID);
+
+	public boolean AcquireReadLock(int transactionID, int variableID);
+
+	public boolean AcquireWriteLock(int transactionID, int variableID);
+
+	public boolean RollbackWriteLock(int transactionID, int variableID);
+
+	public OperationResponse Read(Operation operation);
+
+	public OperationResponse ReadOnly(Operation operation);
+
+	public OperationResponse ReadCommitted(Operation operation);
+
+	public OperationResponse Write(Operation operation);
+
+	public void Commit(int transactionID, int timestamp);
+
+	public void CommitGroup(int[] transactionIDs, int count, int timestamp);
+
+	public void CancelWaiting(int transactionID);
+
+	public void Abort(int transactionID);
+
+	public void SetSnapshotHorizon(int horizon);
+
+	public int ExportVersions(int variableID, int after, int limit, int[] commitTimes, int[] values);
+
+	public boolean InstallVersions(int variableID, int count, int[] commitTimes, int[] values, boolean last);
+
+	public int Blockers(int transactionID, int first, int last, int[] blockers);
+
+	public boolean AcquireRangeReadLock(int transactionID, int first, int last);
+
+	public int ReadRange(int transactionID, int first, int last, int[] variableIDs, int[] values);
+
+	public int ReadBatch(int transactionID, int[] variableIDs, int count, int[] read, int[] values);
+
+	public boolean WriteBatch(int transactionID, int[] variableIDs, int[] values, int count);
+
+	public void UndoBatch(int transactionID);
+
+	public void Close() throws IOException;
+}
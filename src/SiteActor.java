@@ -0,0 +1,67 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Date: 2026-10-17
+ * Description: one site run as an actor, requests are queued in the mailbox of a single thread that owns
+ *    the site, so the requests a TransactionManager sends to several replicas are carried out at the same time
+ *    while each site still sees its own requests in the order they were sent
+ *
+ * 1. Name: SiteActor (constructor)
+ * 	  Input: Site
+ *
+ * 2. Name: Send
+ * 	  Input: Call
+ *    Output: future result of the call, run on the site thread
+ *
+ * 3. Name: Join
+ * 	  Input: future
+ *    Output: result, a failure of the call is rethrown as it was thrown on the site thread
+ *
+ * 4. Name: Stop
+ *    Description: finish what is queued, then end the site thread
+ * */
+public class SiteActor {
+	public interface Call {
+		public boolean Apply(Site site);
+	}
+
+	private Site site;
+	private ExecutorService mailbox;
+
+	public SiteActor(final Site site) {
+		this.site = site;
+		this.mailbox = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "site-" + site.SiteID());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public CompletableFuture<Boolean> Send(final Call call) {
+		return CompletableFuture.supplyAsync(() -> call.Apply(this.site), this.mailbox);
+	}
+
+	public static boolean Join(CompletableFuture<Boolean> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	public void Stop() {
+		this.mailbox.shutdown();
+	}
+}
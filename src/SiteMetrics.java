@@ -0,0 +1,100 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Date: 2026-10-17
+ * Description: counters and histograms of one DataManager. They are always recorded, the site updates them
+ *    from whatever thread runs the operation, so everything is a LongAdder or a Histogram built on them.
+ *    Per-variable contention is kept on the lock nodes of the site and only gathered by Dump.
+ *
+ * 1. Name: SiteMetrics (constructor)
+ * 	  Input: DataManager
+ *
+ * 2. Name: Dump
+ *    Output: the statistics and the 10 variables most often queued on
+ * */
+public class SiteMetrics implements SiteMetricsMBean {
+	private final static int HOTVARIABLECNT = 10;
+
+	public final LongAdder locksGranted = new LongAdder();
+	public final LongAdder locksQueued = new LongAdder();
+	public final LongAdder readOnlyStaleRejects = new LongAdder();
+	public final LongAdder writeRollbacks = new LongAdder();
+	public final LongAdder caughtUpVersions = new LongAdder();
+	public final LongAdder caughtUpVariables = new LongAdder();
+	public final Histogram waitlistLength = new Histogram();
+	public final Histogram reassignNanos = new Histogram();
+	public final Histogram versionDepth = new Histogram();
+	private DataManager site;
+
+	public SiteMetrics(DataManager site) {
+		this.site = site;
+	}
+
+	public long getLocksGranted() {
+		return this.locksGranted.sum();
+	}
+
+	public long getLocksQueued() {
+		return this.locksQueued.sum();
+	}
+
+	public long getReadOnlyStaleRejects() {
+		return this.readOnlyStaleRejects.sum();
+	}
+
+	public long getWriteRollbacks() {
+		return this.writeRollbacks.sum();
+	}
+
+	public long getCaughtUpVersions() {
+		return this.caughtUpVersions.sum();
+	}
+
+	public long getCaughtUpVariables() {
+		return this.caughtUpVariables.sum();
+	}
+
+	public long getWaitlistLengthP99() {
+		return this.waitlistLength.Percentile(0.99);
+	}
+
+	public long getWaitlistLengthMax() {
+		return this.waitlistLength.Max();
+	}
+
+	public long getReassignLocksCount() {
+		return this.reassignNanos.Count();
+	}
+
+	public long getReassignLocksP99Nanos() {
+		return this.reassignNanos.Percentile(0.99);
+	}
+
+	public double getVersionDepthMean() {
+		return this.versionDepth.Mean();
+	}
+
+	public long getVersionDepthMax() {
+		return this.versionDepth.Max();
+	}
+
+	public String Dump() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("site ").append(this.site.siteID).append(" - locks granted ").append(getLocksGranted())
+			.append(", queued ").append(getLocksQueued())
+			.append(", write grants rolled back ").append(getWriteRollbacks())
+			.append(", stale read-only rejects ").append(getReadOnlyStaleRejects()).append('\n');
+		sb.append("  waitlist length: ").append(this.waitlistLength.Describe()).append('\n');
+		sb.append("  ReassignLocks ns: ").append(this.reassignNanos.Describe()).append('\n');
+		sb.append("  version depth: ").append(this.versionDepth.Describe()).append('\n');
+		if (getCaughtUpVersions() > 0 || getCaughtUpVariables() > 0) {
+			sb.append("  caught up after recovery: ").append(getCaughtUpVariables()).append(" variables, ")
+				.append(getCaughtUpVersions()).append(" versions\n");
+		}
+		String hot = this.site.DescribeContention(HOTVARIABLECNT);
+		if (hot.isEmpty() == false) {
+			sb.append("  contended: ").append(hot).append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Date: 2026-10-17
+ * Description: JMX view of one site, registered as adb:type=Site,site=N
+ *
+ * 1. Name: getLocksGranted / getLocksQueued
+ *    Output: lock requests granted at once / queued behind a conflicting holder or waiter
+ *
+ * 2. Name: getReadOnlyStaleRejects
+ *    Output: snapshot reads refused because the site failed after the version was committed
+ *
+ * 3. Name: getWriteRollbacks
+ *    Output: write locks given back because another replica refused the same write
+ *
+ * 4. Name: getCaughtUpVariables / getCaughtUpVersions
+ *    Output: stale copies made readable by catch-up after a recovery / committed versions streamed in for them
+ *
+ * 5. Name: getWaitlistLength* / getReassignLocks* / getVersionDepth*
+ *    Output: histogram statistics, waitlist length when a request is queued, time spent in ReassignLocks,
+ *    depth of a version chain after a commit pruned it
+ *
+ * 6. Name: Dump
+ *    Output: every statistic of the site and its most contended variables as text
+ * */
+public interface SiteMetricsMBean {
+	public long getLocksGranted();
+
+	public long getLocksQueued();
+
+	public long getReadOnlyStaleRejects();
+
+	public long getWriteRollbacks();
+
+	public long getCaughtUpVariables();
+
+	public long getCaughtUpVersions();
+
+	public long getWaitlistLengthP99();
+
+	public long getWaitlistLengthMax();
+
+	public long getReassignLocksCount();
+
+	public long getReassignLocksP99Nanos();
+
+	public double getVersionDepthMean();
+
+	public long getVersionDepthMax();
+
+	public String Dump();
+}
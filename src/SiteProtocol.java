@@ -0,0 +1,108 @@
+import java.nio.ByteBuffer;
+
+/*
+ * Date: 2026-10-17
+ * Description: binary protocol between RemoteSite and SiteServer, big-endian, one frame per call
+ *
+ *    request  [length][requestID][opcode][arguments as ints]
+ *    reply    [length][requestID][events][END][result ok byte][result value int]
+ *
+ *    length counts the bytes after itself. Replies come back in request order on a connection, so a client
+ *    may write many requests before reading any reply (pipelining), and both sides write whatever they
+ *    have queued in one go (batching). The events of a reply are what the DataManager did to its
+ *    surroundings while serving the call: wait-for edges added and removed, lock events for the
+ *    listener, and output text, replayed by the caller before the call returns. An event is [type][int][int],
+ *    OUTPUT and ERROR are [type][length][bytes].
+ *
+ * 1. Name: Begin / End
+ * 	  Input: buffer, requestID, opcode / buffer, frame start
+ *    Description: start a frame with a placeholder length / fill in the length
+ *
+ * 2. Name: PutOperation / GetOperation
+ * 	  Input: buffer, operation / buffer
+ *
+ * 3. Name: Ensure
+ * 	  Input: buffer, bytes needed
+ *    Output: the buffer, or a bigger copy holding the same bytes
+ * */
+public class SiteProtocol {
+	// requests
+	public final static byte FAIL = 1;
+	public final static byte RECOVER = 2;
+	public final static byte DUMPALL = 3;
+	public final static byte DUMPONE = 4;
+	public final static byte READLOCK = 5;
+	public final static byte WRITELOCK = 6;
+	public final static byte ROLLBACK = 7;
+	public final static byte READ = 8;
+	public final static byte READONLY = 9;
+	public final static byte WRITE = 10;
+	public final static byte COMMIT = 11;
+	public final static byte ABORT = 12;
+	public final static byte HORIZON = 13;
+	public final static byte CLOSE = 14;
+	public final static byte EXPORT = 15;
+	public final static byte INSTALL = 16;
+	public final static byte BLOCKERS = 17;
+	public final static byte EDGES = 18; // 1 to report wait-for edges, 0 to keep none
+	public final static byte READCOMMITTED = 19;
+	public final static byte RANGELOCK = 20;
+	public final static byte RANGEREAD = 21;
+	public final static byte READBATCH = 22; // transactionID, count, variableIDs
+	public final static byte WRITEBATCH = 23; // transactionID, count, (variableID, value) pairs
+	public final static byte UNDOBATCH = 24;
+	public final static byte COMMITGROUP = 25; // timestamp, count, transactionIDs
+	public final static byte CANCELWAITING = 26;
+
+	// reply events
+	public final static byte END = 0;
+	public final static byte EDGEADD = 1;
+	public final static byte EDGEREMOVE = 2;
+	public final static byte VARIABLECHANGED = 3;
+	public final static byte SITECHANGED = 4;
+	public final static byte OUTPUT = 5;
+	public final static byte ERROR = 6;
+	public final static byte VERSION = 7; // one exported version, commit time and value (variableID and value for RANGEREAD, index and value for READBATCH)
+	public final static byte BLOCKER = 8; // one transaction a queued request waits behind, transactionID and 0
+
+	public final static int HEADER = 8; // length, requestID
+
+	public static int Begin(ByteBuffer out, int requestID, byte opcode) {
+		int start = out.position();
+		out.putInt(0);
+		out.putInt(requestID);
+		out.put(opcode);
+		return start;
+	}
+
+	public static void End(ByteBuffer out, int start) {
+		out.putInt(start, out.position() - start - 4);
+	}
+
+	public static void PutOperation(ByteBuffer out, Operation op) {
+		out.putInt(op.transactionID);
+		out.putInt(op.variableID);
+		out.putInt(op.operationType.ordinal());
+		out.putInt(op.valueToWrite);
+		out.putInt(op.timestamp);
+	}
+
+	public static Operation GetOperation(ByteBuffer in) {
+		int transactionID = in.getInt();
+		int variableID = in.getInt();
+		Operation.OperationType type = Operation.OperationType.values()[in.getInt()];
+		int value = in.getInt();
+		int timestamp = in.getInt();
+		return new Operation(transactionID, variableID, type, value, timestamp);
+	}
+
+	public static ByteBuffer Ensure(ByteBuffer buffer, int needed) {
+		if (buffer.remaining() >= needed) {
+			return buffer;
+		}
+		ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+		buffer.flip();
+		bigger.put(buffer);
+		return bigger;
+	}
+}
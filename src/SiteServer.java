@@ -0,0 +1,407 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import javax.management.JMException;
+
+/*
+ * Date: 2026-10-17
+ * Description: one DataManager served over SiteProtocol on a loopback port. A single thread runs a non-blocking
+ *    selector loop: every complete request in what was read is carried out in order, and the replies of the
+ *    whole batch go back in one write. Wait-for edges, lock events and output of the DataManager are recorded
+ *    into the reply instead of reaching the TransactionManager directly.
+ *
+ *    SiteServer <siteID> [port]   runs as its own process, prints "port <n>" once it listens and exits when its
+ *                                 client sends CLOSE or goes away. Topology and durable mode come from Config.
+ *
+ * 1. Name: SiteServer (constructor)
+ * 	  Input: DataManager, port (0 for any free one)
+ *
+ * 2. Name: Open
+ * 	  Input: Config, PlacementTable, siteID, port
+ *    Output: server of a new DataManager for the site, rebuilt from its log in the durable mode, the metrics of
+ *    the site are registered and dumped here as adb.metrics.jmx / adb.metrics.dump ask
+ *
+ * 3. Name: Port
+ *    Output: port the server listens on
+ *
+ * 4. Name: Serve
+ *    Description: selector loop, returns after CLOSE or when the last client disconnected
+ *
+ * 5. Name: Execute
+ * 	  Input: request frame, reply buffer
+ *    Output: reply buffer (grown if needed)
+ *    Description: decode one request, call the DataManager and encode its reply with the recorded events
+ * */
+public class SiteServer implements LockEventListener {
+	private static class Connection {
+		public ByteBuffer in = ByteBuffer.allocate(1 << 16);
+		public ByteBuffer out = ByteBuffer.allocate(1 << 16);
+	}
+
+	// the graph of the site process only relays edges, cycles are found by the TransactionManager
+	private class RecordingGraph extends WaitForGraph {
+		public void AddEdge(int from, int to) {
+			Event(SiteProtocol.EDGEADD, from, to);
+		}
+
+		public void RemoveEdge(int from, int to) {
+			Event(SiteProtocol.EDGEREMOVE, from, to);
+		}
+	}
+
+	private DataManager site;
+	private ServerSocketChannel server;
+	private Selector selector;
+	private int clients;
+	private boolean closing;
+	private ByteBuffer events; // events of the request being executed
+	private OutputPipeline writer;
+	private ByteArrayOutputStream captured;
+	private boolean dumpMetrics;
+
+	public SiteServer(DataManager site, int port) throws IOException {
+		this.site = site;
+		this.events = ByteBuffer.allocate(1 << 12);
+		this.captured = new ByteArrayOutputStream();
+		this.writer = new OutputPipeline(this.captured, OutputPipeline.FlushMode.SIZE, 1 << 16);
+		site.Attach(this.writer, this, new RecordingGraph());
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		this.server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		this.server.configureBlocking(false);
+		this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+	}
+
+	public static void main(String[] args) {
+		try {
+			Config config = Config.Load();
+			SiteServer server = Open(config, config.BuildPlacement(), Integer.parseInt(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 0);
+			// the parent reads this line to learn where to connect
+			System.out.println("port " + server.Port());
+			System.out.flush();
+			server.Serve();
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	public static SiteServer Open(Config config, PlacementTable placement, int siteID, int port) throws IOException {
+		DataManager site = new DataManager(siteID, placement);
+		if (config.walDirectory != null) {
+			site.AttachLog(new WriteAheadLog(new File(config.walDirectory), siteID, config.checkpointBytes));
+		}
+		if (config.metricsJmx) {
+			try {
+				Metrics.RegisterSite(site);
+			} catch (JMException e) {
+				e.printStackTrace();
+			}
+		}
+		SiteServer server = new SiteServer(site, port);
+		server.dumpMetrics = config.metricsDump;
+		return server;
+	}
+
+	public int Port() throws IOException {
+		return ((InetSocketAddress) this.server.getLocalAddress()).getPort();
+	}
+
+	public void Serve() throws IOException {
+		try {
+			while (this.closing == false) {
+				this.selector.select();
+				Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (key.isValid() && key.isAcceptable()) {
+						Accept();
+					}
+					if (key.isValid() && key.isReadable()) {
+						Read(key);
+					}
+					if (key.isValid() && key.isWritable()) {
+						Write(key);
+					}
+				}
+			}
+		} finally {
+			for (SelectionKey key : this.selector.keys()) {
+				key.channel().close();
+			}
+			this.selector.close();
+			this.writer.Close();
+			this.site.Close();
+			if (this.dumpMetrics) {
+				System.err.print(this.site.metrics.Dump());
+				System.err.flush();
+			}
+		}
+	}
+
+	public void VariableChanged(int siteID, int variableID) {
+		Event(SiteProtocol.VARIABLECHANGED, variableID, 0);
+	}
+
+	public void SiteChanged(int siteID) {
+		Event(SiteProtocol.SITECHANGED, 0, 0);
+	}
+
+	private void Accept() throws IOException {
+		SocketChannel channel = this.server.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		channel.register(this.selector, SelectionKey.OP_READ, new Connection());
+		this.clients++;
+	}
+
+	private void Read(SelectionKey key) throws IOException {
+		Connection connection = (Connection) key.attachment();
+		SocketChannel channel = (SocketChannel) key.channel();
+		int count = channel.read(connection.in);
+		if (count < 0) {
+			Disconnect(key);
+			return;
+		}
+		ByteBuffer in = connection.in;
+		in.flip();
+		// every complete request in the buffer, their replies are written together
+		while (in.remaining() >= 4 && in.remaining() >= 4 + in.getInt(in.position())) {
+			int length = in.getInt();
+			int end = in.position() + length;
+			connection.out = Execute(in, connection.out);
+			in.position(end);
+		}
+		in.compact();
+		if (in.remaining() == 0) {
+			// a request bigger than the buffer
+			ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+			in.flip();
+			bigger.put(in);
+			connection.in = bigger;
+		}
+		Write(key);
+	}
+
+	private void Write(SelectionKey key) throws IOException {
+		Connection connection = (Connection) key.attachment();
+		SocketChannel channel = (SocketChannel) key.channel();
+		connection.out.flip();
+		channel.write(connection.out);
+		boolean pending = connection.out.hasRemaining();
+		connection.out.compact();
+		key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		if (pending == false && this.closing) {
+			Disconnect(key);
+		}
+	}
+
+	private void Disconnect(SelectionKey key) throws IOException {
+		key.cancel();
+		key.channel().close();
+		this.clients--;
+		if (this.clients == 0) {
+			this.closing = true;
+		}
+	}
+
+	private ByteBuffer Execute(ByteBuffer in, ByteBuffer out) throws IOException {
+		int requestID = in.getInt();
+		byte opcode = in.get();
+		this.events.clear();
+		boolean ok = true;
+		int value = 0;
+		try {
+			switch (opcode) {
+			case SiteProtocol.FAIL:
+				this.site.Fail(in.getInt());
+				break;
+			case SiteProtocol.RECOVER:
+				this.site.Recover(in.getInt());
+				break;
+			case SiteProtocol.DUMPALL:
+				this.site.DumpAll();
+				break;
+			case SiteProtocol.DUMPONE:
+				this.site.DumpOne(in.getInt());
+				break;
+			case SiteProtocol.READLOCK:
+				ok = this.site.AcquireReadLock(in.getInt(), in.getInt());
+				break;
+			case SiteProtocol.WRITELOCK:
+				ok = this.site.AcquireWriteLock(in.getInt(), in.getInt());
+				break;
+			case SiteProtocol.ROLLBACK:
+				ok = this.site.RollbackWriteLock(in.getInt(), in.getInt());
+				break;
+			case SiteProtocol.READ:
+			case SiteProtocol.READONLY:
+			case SiteProtocol.READCOMMITTED:
+			case SiteProtocol.WRITE: {
+				Operation op = SiteProtocol.GetOperation(in);
+				OperationResponse response = opcode == SiteProtocol.READ ? this.site.Read(op)
+						: opcode == SiteProtocol.READONLY ? this.site.ReadOnly(op)
+						: opcode == SiteProtocol.READCOMMITTED ? this.site.ReadCommitted(op) : this.site.Write(op);
+				ok = response.success;
+				value = response.readResult;
+				break;
+			}
+			case SiteProtocol.COMMIT:
+				this.site.Commit(in.getInt(), in.getInt());
+				break;
+			case SiteProtocol.COMMITGROUP: {
+				int timestamp = in.getInt();
+				int[] transactionIDs = GetInts(in, in.getInt());
+				this.site.CommitGroup(transactionIDs, transactionIDs.length, timestamp);
+				break;
+			}
+			case SiteProtocol.CANCELWAITING:
+				this.site.CancelWaiting(in.getInt());
+				break;
+			case SiteProtocol.ABORT:
+				this.site.Abort(in.getInt());
+				break;
+			case SiteProtocol.HORIZON:
+				this.site.SetSnapshotHorizon(in.getInt());
+				break;
+			case SiteProtocol.EXPORT: {
+				int variableID = in.getInt();
+				int after = in.getInt();
+				int limit = in.getInt();
+				int[] commitTimes = new int[limit];
+				int[] values = new int[limit];
+				value = this.site.ExportVersions(variableID, after, limit, commitTimes, values);
+				ok = value >= 0;
+				for (int i = 0; i < value; i++) {
+					Event(SiteProtocol.VERSION, commitTimes[i], values[i]);
+				}
+				break;
+			}
+			case SiteProtocol.INSTALL: {
+				int variableID = in.getInt();
+				int count = in.getInt();
+				boolean last = in.getInt() == 1;
+				int[] commitTimes = new int[count];
+				int[] values = new int[count];
+				for (int i = 0; i < count; i++) {
+					commitTimes[i] = in.getInt();
+					values[i] = in.getInt();
+				}
+				ok = this.site.InstallVersions(variableID, count, commitTimes, values, last);
+				break;
+			}
+			case SiteProtocol.BLOCKERS: {
+				int transactionID = in.getInt();
+				int first = in.getInt();
+				int last = in.getInt();
+				int[] blockers = new int[in.getInt()];
+				value = this.site.Blockers(transactionID, first, last, blockers);
+				for (int i = 0; i < Math.min(value, blockers.length); i++) {
+					Event(SiteProtocol.BLOCKER, blockers[i], 0);
+				}
+				break;
+			}
+			case SiteProtocol.RANGELOCK:
+				ok = this.site.AcquireRangeReadLock(in.getInt(), in.getInt(), in.getInt());
+				break;
+			case SiteProtocol.RANGEREAD: {
+				int transactionID = in.getInt();
+				int first = in.getInt();
+				int last = in.getInt();
+				int[] variableIDs = new int[in.getInt()];
+				int[] values = new int[variableIDs.length];
+				value = this.site.ReadRange(transactionID, first, last, variableIDs, values);
+				ok = value >= 0;
+				for (int i = 0; i < value; i++) {
+					Event(SiteProtocol.VERSION, variableIDs[i], values[i]);
+				}
+				break;
+			}
+			case SiteProtocol.READBATCH: {
+				int transactionID = in.getInt();
+				int[] variableIDs = GetInts(in, in.getInt());
+				int[] read = new int[variableIDs.length];
+				int[] values = new int[variableIDs.length];
+				value = this.site.ReadBatch(transactionID, variableIDs, variableIDs.length, read, values);
+				ok = value >= 0;
+				for (int i = 0; i < value; i++) {
+					Event(SiteProtocol.VERSION, read[i], values[i]);
+				}
+				break;
+			}
+			case SiteProtocol.WRITEBATCH: {
+				int transactionID = in.getInt();
+				int count = in.getInt();
+				int[] variableIDs = new int[count];
+				int[] values = new int[count];
+				for (int i = 0; i < count; i++) {
+					variableIDs[i] = in.getInt();
+					values[i] = in.getInt();
+				}
+				ok = this.site.WriteBatch(transactionID, variableIDs, values, count);
+				break;
+			}
+			case SiteProtocol.UNDOBATCH:
+				this.site.UndoBatch(in.getInt());
+				break;
+			case SiteProtocol.EDGES:
+				this.site.Attach(this.writer, this, in.getInt() == 1 ? new RecordingGraph() : null);
+				break;
+			case SiteProtocol.CLOSE:
+				this.site.CloseLog();
+				this.closing = true;
+				break;
+			default:
+				throw new IllegalArgumentException("unknown opcode " + opcode);
+			}
+		} catch (RuntimeException e) {
+			byte[] message = String.valueOf(e).getBytes();
+			this.events = SiteProtocol.Ensure(this.events, 5 + message.length);
+			this.events.put(SiteProtocol.ERROR).putInt(message.length).put(message);
+		}
+		this.writer.Flush();
+		if (this.captured.size() > 0) {
+			byte[] text = this.captured.toByteArray();
+			this.captured.reset();
+			this.events = SiteProtocol.Ensure(this.events, 5 + text.length);
+			this.events.put(SiteProtocol.OUTPUT).putInt(text.length).put(text);
+		}
+
+		out = SiteProtocol.Ensure(out, SiteProtocol.HEADER + this.events.position() + 6);
+		int start = out.position();
+		out.putInt(0);
+		out.putInt(requestID);
+		this.events.flip();
+		out.put(this.events);
+		out.put(SiteProtocol.END);
+		out.put((byte) (ok ? 1 : 0));
+		out.putInt(value);
+		SiteProtocol.End(out, start);
+		return out;
+	}
+
+	private static int[] GetInts(ByteBuffer in, int count) {
+		int[] values = new int[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = in.getInt();
+		}
+		return values;
+	}
+
+	private void Event(byte type, int a, int b) {
+		this.events = SiteProtocol.Ensure(this.events, 9);
+		this.events.put(type).putInt(a).putInt(b);
+	}
+}
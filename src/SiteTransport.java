@@ -0,0 +1,332 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Date: 2026-10-17
+ * Description: client side of SiteProtocol, one non-blocking connection per site served by a single selector
+ *    thread. A request is appended to the send buffer of its connection and written right away by the caller
+ *    when nothing is queued before it, otherwise the selector thread writes the whole queue in one go once the
+ *    socket takes more. Replies are matched to requests in order and complete their futures, so any number of
+ *    requests can be in flight on a connection.
+ *
+ *    loopback   every site is a SiteServer thread of this process, still reached over a socket
+ *    process    every site is a SiteServer child JVM started with the classpath and adb.* settings of this one
+ *
+ * 1. Name: Start
+ * 	  Input: Config, PlacementTable, loopback | process
+ *    Output: transport connected to a freshly started server for every site
+ *
+ * 2. Name: Submit
+ * 	  Input: siteID, opcode, int arguments / siteID, opcode, Operation
+ *    Output: future reply, positioned after its requestID
+ *
+ * 3. Name: Join
+ * 	  Input: future reply
+ *    Output: the reply, a lost connection is rethrown as UncheckedIOException
+ *
+ * 4. Name: Close
+ *    Description: disconnect and wait for the servers to exit
+ * */
+public class SiteTransport {
+	private final static long EXITMILLIS = 5000;
+
+	private static class Connection {
+		public int siteID;
+		public SocketChannel channel;
+		public SelectionKey key;
+		public ByteBuffer out = ByteBuffer.allocate(1 << 16); // guarded by the connection
+		public ByteBuffer in = ByteBuffer.allocate(1 << 16); // selector thread only
+		public ArrayDeque<CompletableFuture<ByteBuffer>> inflight = new ArrayDeque<CompletableFuture<ByteBuffer>>();
+		public int nextRequestID;
+		public boolean writeQueued; // the selector thread has been asked to finish the write
+	}
+
+	private Connection[] connections;
+	private Selector selector;
+	private Thread selectorThread;
+	private ConcurrentLinkedQueue<Connection> writeRequests;
+	private volatile boolean closing;
+	private List<Process> processes;
+	private List<Thread> servers;
+
+	private SiteTransport(int siteCount) throws IOException {
+		this.connections = new Connection[siteCount + 1];
+		this.selector = Selector.open();
+		this.writeRequests = new ConcurrentLinkedQueue<Connection>();
+		this.processes = new ArrayList<Process>();
+		this.servers = new ArrayList<Thread>();
+	}
+
+	public static SiteTransport Start(Config config, PlacementTable placement, String mode) throws IOException {
+		SiteTransport transport = new SiteTransport(placement.siteCount);
+		int[] ports = new int[placement.siteCount + 1];
+		if (mode.equals("process")) {
+			// start every JVM before waiting for any of them
+			for (int i = 1; i <= placement.siteCount; i++) {
+				transport.processes.add(Launch(i));
+			}
+			for (int i = 1; i <= placement.siteCount; i++) {
+				ports[i] = ReadPort(transport.processes.get(i - 1));
+			}
+		} else {
+			for (int i = 1; i <= placement.siteCount; i++) {
+				final SiteServer server = SiteServer.Open(config, placement, i, 0);
+				ports[i] = server.Port();
+				Thread thread = new Thread(new Runnable() {
+					public void run() {
+						try {
+							server.Serve();
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
+				}, "site-server-" + i);
+				thread.setDaemon(true);
+				thread.start();
+				transport.servers.add(thread);
+			}
+		}
+		for (int i = 1; i <= placement.siteCount; i++) {
+			Connection connection = new Connection();
+			connection.siteID = i;
+			connection.channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), ports[i]));
+			connection.channel.socket().setTcpNoDelay(true);
+			connection.channel.configureBlocking(false);
+			connection.key = connection.channel.register(transport.selector, SelectionKey.OP_READ, connection);
+			transport.connections[i] = connection;
+		}
+		transport.selectorThread = new Thread(new Runnable() {
+			public void run() {
+				transport.SelectLoop();
+			}
+		}, "site-transport");
+		transport.selectorThread.setDaemon(true);
+		transport.selectorThread.start();
+		return transport;
+	}
+
+	public CompletableFuture<ByteBuffer> Submit(int siteID, byte opcode, int... arguments) {
+		Connection connection = this.connections[siteID];
+		synchronized (connection) {
+			connection.out = SiteProtocol.Ensure(connection.out, SiteProtocol.HEADER + 1 + 4 * arguments.length);
+			int start = SiteProtocol.Begin(connection.out, ++connection.nextRequestID, opcode);
+			for (int argument : arguments) {
+				connection.out.putInt(argument);
+			}
+			SiteProtocol.End(connection.out, start);
+			return Send(connection);
+		}
+	}
+
+	public CompletableFuture<ByteBuffer> Submit(int siteID, byte opcode, Operation op) {
+		Connection connection = this.connections[siteID];
+		synchronized (connection) {
+			connection.out = SiteProtocol.Ensure(connection.out, SiteProtocol.HEADER + 1 + 20);
+			int start = SiteProtocol.Begin(connection.out, ++connection.nextRequestID, opcode);
+			SiteProtocol.PutOperation(connection.out, op);
+			SiteProtocol.End(connection.out, start);
+			return Send(connection);
+		}
+	}
+
+	public static ByteBuffer Join(CompletableFuture<ByteBuffer> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	public void Close() throws IOException {
+		this.closing = true;
+		this.selector.wakeup();
+		try {
+			this.selectorThread.join(EXITMILLIS);
+			for (Thread server : this.servers) {
+				server.join(EXITMILLIS);
+			}
+			for (Process process : this.processes) {
+				if (process.waitFor(EXITMILLIS, TimeUnit.MILLISECONDS) == false) {
+					process.destroyForcibly();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// called holding the connection, the frame is already in its send buffer
+	private CompletableFuture<ByteBuffer> Send(Connection connection) {
+		CompletableFuture<ByteBuffer> future = new CompletableFuture<ByteBuffer>();
+		connection.inflight.addLast(future);
+		if (connection.writeQueued) {
+			// goes out with what is waiting for the socket
+			return future;
+		}
+		try {
+			connection.out.flip();
+			connection.channel.write(connection.out);
+			boolean pending = connection.out.hasRemaining();
+			connection.out.compact();
+			if (pending) {
+				connection.writeQueued = true;
+				this.writeRequests.add(connection);
+				this.selector.wakeup();
+			}
+		} catch (IOException e) {
+			Broken(connection, e);
+		}
+		return future;
+	}
+
+	private void SelectLoop() {
+		try {
+			while (this.closing == false) {
+				this.selector.select();
+				Connection queued;
+				while ((queued = this.writeRequests.poll()) != null) {
+					if (queued.key.isValid()) {
+						queued.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					}
+				}
+				Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					Connection connection = (Connection) key.attachment();
+					try {
+						if (key.isValid() && key.isReadable()) {
+							Read(connection);
+						}
+						if (key.isValid() && key.isWritable()) {
+							Write(connection);
+						}
+					} catch (IOException e) {
+						Broken(connection, e);
+					}
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			for (int i = 1; i < this.connections.length; i++) {
+				if (this.connections[i] != null) {
+					Broken(this.connections[i], new IOException("transport closed"));
+				}
+			}
+			try {
+				this.selector.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void Read(Connection connection) throws IOException {
+		if (connection.channel.read(connection.in) < 0) {
+			throw new IOException("site " + connection.siteID + " closed the connection");
+		}
+		ByteBuffer in = connection.in;
+		in.flip();
+		while (in.remaining() >= 4 && in.remaining() >= 4 + in.getInt(in.position())) {
+			int length = in.getInt();
+			byte[] reply = new byte[length];
+			in.get(reply);
+			ByteBuffer frame = ByteBuffer.wrap(reply);
+			int requestID = frame.getInt();
+			CompletableFuture<ByteBuffer> future;
+			synchronized (connection) {
+				future = connection.inflight.pollFirst();
+			}
+			if (future == null) {
+				throw new IOException("site " + connection.siteID + " sent an unexpected reply " + requestID);
+			}
+			future.complete(frame);
+		}
+		in.compact();
+		if (in.remaining() == 0) {
+			ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+			in.flip();
+			bigger.put(in);
+			connection.in = bigger;
+		}
+	}
+
+	private void Write(Connection connection) throws IOException {
+		synchronized (connection) {
+			connection.out.flip();
+			connection.channel.write(connection.out);
+			boolean pending = connection.out.hasRemaining();
+			connection.out.compact();
+			if (pending == false) {
+				connection.writeQueued = false;
+				connection.key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+	}
+
+	// fail everything in flight, later requests fail on their write
+	private void Broken(Connection connection, IOException cause) {
+		ArrayList<CompletableFuture<ByteBuffer>> lost;
+		synchronized (connection) {
+			lost = new ArrayList<CompletableFuture<ByteBuffer>>(connection.inflight);
+			connection.inflight.clear();
+		}
+		for (CompletableFuture<ByteBuffer> future : lost) {
+			future.completeExceptionally(new UncheckedIOException(cause));
+		}
+		try {
+			connection.channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static Process Launch(int siteID) throws IOException {
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+			String key = property.getKey().toString();
+			if (key.startsWith("adb.")) {
+				command.add("-D" + key + "=" + property.getValue());
+			}
+		}
+		command.add("SiteServer");
+		command.add(Integer.toString(siteID));
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return builder.start();
+	}
+
+	private static int ReadPort(Process process) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		String line = reader.readLine();
+		if (line == null || line.startsWith("port ") == false) {
+			throw new IOException("site server did not start: " + line);
+		}
+		return Integer.parseInt(line.substring(5).trim());
+	}
+}
@@ -1,4 +1,6 @@
-import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /*
  * Author: Zimo Li (zl2521)
@@ -7,15 +9,36 @@ import java.util.HashSet;
  * */
 
 public class Transaction {
+	public enum AbortCause {
+		NONE,
+		DEADLOCK,
+		SITEFAILURE,
+		PREVENTION, // wait-die or wound-wait, see TransactionManager.DeadlockPolicy
+		VALIDATION // optimistic or snapshot mode, what it read (or wrote) was overwritten before it committed
+	}
+	
 	private int startTime;
 	private boolean isReadOnly;
-	public boolean willAbort;
-	public HashSet<Integer> visitedSites;
+	public volatile boolean willAbort;
+	public AbortCause abortCause;
+	public Set<Integer> visitedSites;
+	public Set<Integer> lockedSites; // sites holding a lock or a waitlist entry of the transaction
+	public IntSet readSites; // sites the transaction holds read locks on, counted in the site read load
+	public IntSet writtenPositions; // copies (PlacementTable positions) its writes went to
+	public IntSet readSet; // optimistic mode: variables read from a site, validated at the end
+	public TreeMap<Integer, Integer> writeSet; // optimistic and snapshot modes: variableID -> value, installed at the end
+	public boolean committing; // ended and waiting for its group commit, still holding its locks
 	
 	public Transaction(int st, boolean isRonly) {
 		this.startTime = st;
 		this.isReadOnly = isRonly;
-		this.visitedSites = new HashSet<Integer>();
+		this.visitedSites = ConcurrentHashMap.newKeySet();
+		this.lockedSites = ConcurrentHashMap.newKeySet();
+		this.readSites = new IntSet();
+		this.writtenPositions = new IntSet();
+		this.readSet = new IntSet();
+		this.writeSet = new TreeMap<Integer, Integer>();
+		this.abortCause = AbortCause.NONE;
 	}
 
 	public int getStartTime() {
@@ -1,10 +1,11 @@
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
 
 /*
@@ -13,10 +14,12 @@ import java.util.Map;
  * Description: TransactionManager class that interpret input and execute commands
  * 
  * 1. Name: TransactionManager (constructor)
- * 	  Input: DataManager array for each site
+ * 	  Input: Site array, PlacementTable
  *    
- * 2. Name: Run
- *    Description: simulate starting point for execution
+ * 2. Name: Run / Tick
+ * 	  Input: Command source
+ *    Output: none / false at the end of the input
+ *    Description: simulate starting point for execution, one Tick per input line
  *   
  * 3. Name: ExecuteReadWrite
  *    Description: execute reads / writes
@@ -27,7 +30,7 @@ import java.util.Map;
  *    
  * 5. Name: Recover
  * 	  Input: siteID
- *    Description: call DataManager.Recover
+ *    Description: call DataManager.Recover and start its CatchUp
  *    
  * 6. Name: DumpAll
  *    Description: call DataManager.DumpAll for every site
@@ -41,7 +44,7 @@ import java.util.Map;
  *    Description: call DataManager.DumpOne for variableID
  *        
  * 9. Name: Abort
- * 	  Input: transactionID
+ * 	  Input: transactionID, cause
  *    Description: call DataManager.Abort for every site that transaction associated with
  *      
  * 10. Name: Begin
@@ -65,163 +68,358 @@ import java.util.Map;
  * 14. Name: Write
  * 	  Input: operation
  *    Output: success or not
- *    Description: call DataManager.AcquireWriteLock and DataManager.Write
- *         
- * 15. Name: hasCycle
- * 	  Input: current node, root node, graph, path
- *    Output: has cycle or not
+ *    Description: call DataManager.AcquireWriteLock and DataManager.Write, all or nothing
  *         
- * 16. Name: DetectDeadLock
+ * 15. Name: DetectDeadLock
  *    Output: has deadlock or not
  *    Description: Abort the youngest transaction that caused deadlock if any
+ *    
+ * 16. Name: Enqueue
+ * 	  Input: operation
+ *    Description: queue a new operation
+ *    
+ * 17. Name: Park
+ * 	  Input: operation
+ *    Description: put a blocked operation aside until its variable changes
+ *    
+ * 18. Name: VariableChanged / SiteChanged
+ * 	  Input: siteID, variableID / siteID
+ *    Description: move the parked operations back to the ready queue
+ *    
+ * 19. Name: OnSites
+ * 	  Input: sites, call
+ *    Output: true on every site or not
+ *    
+ * 20. Name: StartActors / StopActors
+ *    Description: run every DataManager as a SiteActor
+ *    
+ * 21. Name: EnableCatchUp
+ * 	  Input: versions per tick
+ *    Description: catch recovered sites up from their peers
+ *    
+ * 22. Name: OrderReplicas
+ * 	  Input: variableID, number of candidate sites
+ *    Description: order the candidate sites by the read policy
+ *    
+ * 23. Name: SetDeadlockPolicy
+ * 	  Input: DETECT | WAITDIE | WOUNDWAIT
+ *    
+ * 24. Name: Prevent
+ * 	  Input: blocked operation
+ *    Output: try again right away or not
+ *    Description: wait-die or wound-wait on the transactions it waits behind
+ *    
+ * 25. Name: ReadOptimistic / ReadSnapshot / Buffer
+ * 	  Input: operation
+ *    Output: success or not
+ *    Description: reads and buffered writes of the optimistic and snapshot modes
+ *    
+ * 26. Name: Validate / CommittedSince
+ * 	  Input: transaction / variableID, time
+ *    Output: valid or not / committed after the time or not
+ *    
+ * 27. Name: Install
+ * 	  Input: transactionID, transaction
+ *    Output: every buffered write went through or not
+ *    
+ * 28. Name: Scan
+ * 	  Input: operation
+ *    Output: success or not
+ *    Description: read a range under one range lock per site
+ *    
+ * 29. Name: ReadBatch / WriteBatch
+ * 	  Input: operation
+ *    Output: success or not
+ *    Description: MR / MW, one call per site
+ *    
+ * 30. Name: CommitGroup
+ *    Description: commit the transactions that ended in the window together
+ *    
+ * 31. Name: RecordCommits / LastCommit
+ * 	  Input: transaction, commit time / position, snapshot time
+ *    Output: none / the commit time a copy has for the snapshot
  * */
-public class TransactionManager {
+public class TransactionManager implements LockEventListener {
+	public enum ReadPolicy {
+		FIRST, // lowest site first, the original order
+		ROUNDROBIN, // rotate the first choice among the readable copies of each variable
+		LEASTLOADED // the readable copy whose site serves the fewest running transactions' read locks
+	}
+	
+	public enum ConcurrencyControl {
+		LOCKING("2pl"), // strict two-phase locking
+		OPTIMISTIC("occ"), // no locks until the end, the read set is validated at commit
+		SNAPSHOT("si"); // reads from the snapshot at the start time, writes validated first committer wins
+		
+		private final String option;
+		
+		ConcurrencyControl(String option) {
+			this.option = option;
+		}
+		
+		// the adb.concurrency spelling, like valueOf an unknown one is an IllegalArgumentException
+		public static ConcurrencyControl Parse(String option) {
+			for(ConcurrencyControl concurrency: values()) {
+				if(concurrency.option.equals(option.trim().toLowerCase())) {
+					return concurrency;
+				}
+			}
+			throw new IllegalArgumentException("No concurrency control " + option);
+		}
+	}
+	
+	public enum DeadlockPolicy {
+		DETECT, // cycles in the wait-for graph, the youngest transaction in one is aborted
+		WAITDIE, // an older transaction waits for a younger one, a younger one dies
+		WOUNDWAIT // an older transaction aborts (wounds) a younger one, a younger one waits
+	}
+	
 	private int time;
-	private DataManager[] DM;
-	private boolean[] siteStatus = new boolean[DataManager.SITECNT+1];
+	private Site[] DM;
+	private boolean[] siteStatus;
+	private AvailabilityIndex[] siteAvailability;
 	private HashMap<Integer, Transaction> transactions; // TransactionID begins from 1
-	private HashMap<Integer, ArrayList<Integer>> itemSites;
-	private ArrayList<Operation> pendingOperations;
+	private PlacementTable placement;
+	private long sequence;
+	private TreeMap<Long, Operation> readyOperations; // ordered by arrival, like the old pending list
+	private HashMap<Integer, ArrayList<Operation>> parkedOperations;
+	private ArrayList<Operation> parkedRanges; // scans and batches, woken by a change on any variable of their range
+	private WaitForGraph waitGraph;
+	private TreeMap<Integer, Integer> readOnlyStarts; // start time -> number of active transactions reading a snapshot
+	private long checkedVersion;
+	private HashSet<Integer> cycleNodes;
 	public boolean writeToFile;
-	public BufferedWriter writer;
+	public TransactionObserver observer; // null unless a driver issues the commands
+	public ManagerMetrics metrics;
+	private int parkedCount;
+	private SiteActor[] actors; // null unless the sites run as actors
+	private int[] siteBuffer; // sites of the replica call being made
+	private boolean[] siteResults;
+	private CompletableFuture<Boolean>[] replies;
+	public OutputPipeline writer;
+	public CatchUp catchUp; // null unless recovered sites are caught up actively
+	public ReadPolicy readPolicy;
+	private ReplicaBitmap readable; // copies a read may go to, by PlacementTable position
+	private int[] siteReadLoad; // running transactions holding read locks on the site
+	private int[] nextReplica; // round-robin start per variable
+	private int[] positionBuffer; // positions matching siteBuffer
+	private DeadlockPolicy deadlockPolicy;
+	private int[] blockerBuffer;
+	private boolean prevented; // Prevent aborted a transaction since the start of the tick
+	public ConcurrencyControl concurrency; // of read-write transactions, read-only ones always read a snapshot
+	private int[] versionBuffer;
+	public int groupCommitWindow; // ticks a group waits after its first member ended, 0 commits each at its end
+	private ArrayList<Integer> committing; // the current group, in the order the transactions ended
+	private int groupStart;
+	private int[][] copyCommits; // commit times by PlacementTable position, oldest first, null until the first commit
+	private int[] copyCommitCount;
 	
-	public TransactionManager(DataManager[] _DM, BufferedWriter writer) {
+	public TransactionManager(Site[] _DM, PlacementTable placement, OutputPipeline writer) {
 		this.time = 0;
 		this.DM = _DM;
+		this.placement = placement;
 		this.writer = writer;
+		siteStatus = new boolean[placement.siteCount+1];
+		siteAvailability = new AvailabilityIndex[placement.siteCount+1];
 		transactions = new HashMap<Integer, Transaction>();
-		itemSites = new HashMap<Integer, ArrayList<Integer>>();
-		pendingOperations = new ArrayList<Operation>();
+		sequence = 0;
+		readyOperations = new TreeMap<Long, Operation>();
+		parkedOperations = new HashMap<Integer, ArrayList<Operation>>();
+		parkedRanges = new ArrayList<Operation>();
+		waitGraph = new WaitForGraph();
+		readOnlyStarts = new TreeMap<Integer, Integer>();
+		checkedVersion = 0;
+		cycleNodes = new HashSet<Integer>();
 		writeToFile = false;
-		for(int i = 1; i <= DataManager.SITECNT; i++) {
+		metrics = new ManagerMetrics();
+		parkedCount = 0;
+		actors = null;
+		siteBuffer = new int[placement.siteCount];
+		siteResults = new boolean[placement.siteCount];
+		replies = NewReplies(placement.siteCount);
+		readPolicy = ReadPolicy.FIRST;
+		readable = new ReplicaBitmap(placement.PositionCount());
+		siteReadLoad = new int[placement.siteCount+1];
+		nextReplica = new int[placement.variableCount+1];
+		positionBuffer = new int[placement.siteCount];
+		deadlockPolicy = DeadlockPolicy.DETECT;
+		blockerBuffer = new int[16];
+		concurrency = ConcurrencyControl.LOCKING;
+		versionBuffer = new int[1];
+		groupCommitWindow = 0;
+		committing = new ArrayList<Integer>();
+		groupStart = 0;
+		copyCommits = new int[placement.PositionCount()][];
+		copyCommitCount = new int[placement.PositionCount()];
+		for(int i = 1; i <= placement.siteCount; i++) {
 			// suppose all the sites are up at the starting point
 			siteStatus[i] = true;
-			DM[i].writer = writer;
-		}
-		for(int i = 1; i <= DataManager.VARIABLECNT; i++){
-			ArrayList<Integer> tmp = new ArrayList<Integer>();
-			itemSites.put(i, tmp);
+			siteAvailability[i] = new AvailabilityIndex();
+			DM[i].Attach(writer, this, waitGraph);
 		}
-		for(int site = 1; site <= DataManager.SITECNT; site++) {
-			for(int var = 1; var <= DataManager.VARIABLECNT; var++) {
-				if((var%2 == 0) || (1+(var%10) == site)) {
-					itemSites.get(var).add(site);
-				}
-			}
+	}
+	
+	// execution simulator, every input line is one tick
+	public void Run(Command reader) {
+		while(Tick(reader)) {
 		}
-		
 	}
 	
-	// execution simulator
-	public void Run(BufferedReader reader) {
-		String line;
-		while(true) {
-			if(DetectDeadLock()) {
+	// one tick; the load driver and the benchmarks call it directly
+	public boolean Tick(Command reader) {
+		if(deadlockPolicy == DeadlockPolicy.DETECT) {
+			long start = System.nanoTime();
+			boolean deadlocked = DetectDeadLock();
+			metrics.detectDeadLockNanos.Record(System.nanoTime() - start);
+			if(deadlocked) {
 				ExecuteReadWrite();
 			}
-			
-			try {
-				line = reader.readLine();
-				if(line == null) break;
-				ParseCommand(line);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-			
+		} else if(prevented) {
+			// like after a deadlock victim, what its abort woke goes before the next command
+			prevented = false;
 			ExecuteReadWrite();
-			time += 1;
 		}
 		
-	}
-	
-	private String[] ParseLine(String line) {
-		// first try to get rid of comments (starting with '//')
-		line = line.replaceAll(" ", "");
-		int idx = line.indexOf("//");
-		if (idx != -1) {
-			line = line.substring(0,idx);
+		try {
+			if(!reader.Next()) {
+				CommitGroup();
+				return false;
+			}
+			ParseCommand(reader);
+			if(!committing.isEmpty() && time - groupStart >= groupCommitWindow) {
+				CommitGroup();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		if (line.length() == 0) {
-			return null;
+		
+		if(catchUp != null) {
+			catchUp.Step(siteStatus, writer, time);
 		}
-		String[] result = new String[2];
-		int first = line.indexOf("(");
-		int second = line.indexOf(")");
-		result[0] = line.substring(0, first);
-		result[1] = line.substring(first+1, second);
-		return result;
-	}
-	
-	private int ParseID(String line) {
-		String num = line.substring(1);
-		return Integer.parseInt(num);
+		ExecuteReadWrite();
+		metrics.pendingNow = readyOperations.size() + parkedCount;
+		metrics.pendingOperations.Record(metrics.pendingNow);
+		time += 1;
+		writer.EndTick();
+		return true;
 	}
 	
-	private void ParseCommand(String line) {
-		String[] commands = ParseLine(line);
-		if(commands == null) {
-			return;
-		}
-		if(commands[0].equals("begin")) {
-			int transactionID = ParseID(commands[1]);
-			Begin(transactionID, false);
-		} else if(commands[0].equals("beginRO")) {
-			int transactionID = ParseID(commands[1]);
-			Begin(transactionID, true);
-		} else if(commands[0].equals("end")) {
-			int transactionID = ParseID(commands[1]);
-			Finish(transactionID);
-		} else if(commands[0].equals("fail")){
-			int siteID = Integer.parseInt(commands[1]);
-			Fail(siteID);
-		} else if(commands[0].equals("recover")){
-			int siteID = Integer.parseInt(commands[1]);
-			Recover(siteID);
-		} else if(commands[0].equals("dump")) {
-			if(commands[1].length() == 0) {
-				DumpAll();
-			} else if(commands[1].charAt(0) == 'x') {
-				int idx = ParseID(commands[1]);
-				DumpItem(idx);
-			} else {
-				int siteID = Integer.parseInt(commands[1]);
-				DumpSite(siteID);
-			}
-		} else if(commands[0].equals("R")) {
-			String[] params = commands[1].split(",");
-			int transactionID = ParseID(params[0]);
-			int variableID = ParseID(params[1]);
-			Transaction curTrans = transactions.get(transactionID);
+	private void ParseCommand(Command command) {
+		switch(command.type) {
+		case BEGIN:
+			Begin(command.transactionID, false);
+			break;
+		case BEGINRO:
+			Begin(command.transactionID, true);
+			break;
+		case END:
+			Finish(command.transactionID);
+			break;
+		case FAIL:
+			Fail(command.siteID);
+			break;
+		case RECOVER:
+			Recover(command.siteID);
+			break;
+		case DUMPALL:
+			DumpAll();
+			break;
+		case DUMPITEM:
+			DumpItem(command.variableID);
+			break;
+		case DUMPSITE:
+			DumpSite(command.siteID);
+			break;
+		case READ: {
+			Transaction curTrans = transactions.get(command.transactionID);
 			if(curTrans.willAbort) {
 				//System.out.println("DEBUG: About to abort so ignore this read command when parsing");
 				return;
 			}
-			Operation op = new Operation(transactionID, variableID, Operation.OperationType.READ, -1, curTrans.getStartTime());
+			Operation op = new Operation(command.transactionID, command.variableID, Operation.OperationType.READ, -1, curTrans.getStartTime());
 			if(curTrans.isReadOnly()) {
 				op.operationType = Operation.OperationType.READONLY;
 			}
-			pendingOperations.add(op);
-		} else if(commands[0].equals("W")) {
-			String[] params = commands[1].split(",");
-			int transactionID = ParseID(params[0]);
-			int variableID = ParseID(params[1]);
-			int value = Integer.parseInt(params[2]);
-			Transaction curTrans = transactions.get(transactionID);
+			Enqueue(op);
+			break;
+		}
+		case WRITE: {
+			Transaction curTrans = transactions.get(command.transactionID);
 			if(curTrans.willAbort) {
 				//System.out.println("DEBUG: About to abort so ignore this write command when parsing");
 				return;
 			}
-			Operation op = new Operation(transactionID, variableID, Operation.OperationType.WRITE, value, curTrans.getStartTime());
-			pendingOperations.add(op);
-		} else {
-			//System.out.println("DEBUG: Invalid command name");
+			Operation op = new Operation(command.transactionID, command.variableID, Operation.OperationType.WRITE, command.value, curTrans.getStartTime());
+			Enqueue(op);
+			break;
+		}
+		case MREAD:
+		case MWRITE: {
+			Transaction curTrans = transactions.get(command.transactionID);
+			if(curTrans.willAbort || command.count == 0) {
+				return;
+			}
+			boolean write = command.type == Command.CommandType.MWRITE;
+			if((!write && curTrans.isReadOnly()) || concurrency != ConcurrencyControl.LOCKING) {
+				for(int i = 0; i < command.count; i++) {
+					Operation op = new Operation(command.transactionID, command.variableIDs[i], write ? Operation.OperationType.WRITE : Operation.OperationType.READ,
+							write ? command.values[i] : -1, curTrans.getStartTime());
+					if(!write && curTrans.isReadOnly()) {
+						op.operationType = Operation.OperationType.READONLY;
+					}
+					Enqueue(op);
+				}
+				break;
+			}
+			Operation op = new Operation(command.transactionID, command.variableIDs[0], write ? Operation.OperationType.MWRITE : Operation.OperationType.MREAD, -1, curTrans.getStartTime());
+			op.variableIDs = Arrays.copyOf(command.variableIDs, command.count);
+			op.values = write ? Arrays.copyOf(command.values, command.count) : null;
+			op.lastVariableID = op.variableID;
+			for(int variableID: op.variableIDs) {
+				op.variableID = Math.min(op.variableID, variableID);
+				op.lastVariableID = Math.max(op.lastVariableID, variableID);
+			}
+			Enqueue(op);
+			break;
+		}
+		case SCAN: {
+			Transaction curTrans = transactions.get(command.transactionID);
+			if(curTrans.willAbort) {
+				return;
+			}
+			int first = Math.max(command.variableID, 1);
+			int last = Math.min(command.lastVariableID, placement.variableCount);
+			if(curTrans.isReadOnly() || concurrency != ConcurrencyControl.LOCKING) {
+				// no locks to share, one read per variable
+				for(int variableID = first; variableID <= last; variableID++) {
+					Operation op = new Operation(command.transactionID, variableID, Operation.OperationType.READ, -1, curTrans.getStartTime());
+					if(curTrans.isReadOnly()) {
+						op.operationType = Operation.OperationType.READONLY;
+					}
+					Enqueue(op);
+				}
+			} else if(first <= last) {
+				Operation op = new Operation(command.transactionID, first, Operation.OperationType.SCAN, -1, curTrans.getStartTime());
+				op.lastVariableID = last;
+				Enqueue(op);
+			}
+			break;
+		}
+		default:
+			// empty line, comment or invalid command
+			break;
 		}
 	}
 	
 	private void ExecuteReadWrite() {
-		ArrayList<Operation> leftOperations = new ArrayList<Operation>();
-		for(int i = 0; i < pendingOperations.size(); i++) {
-			Operation op = pendingOperations.get(i);
+		// only operations woken since their last try are in the ready queue; the ones woken
+		// while this pass runs are tried in this pass if they come later in arrival order
+		long last = Long.MIN_VALUE;
+		Map.Entry<Long, Operation> entry;
+		while((entry = readyOperations.higherEntry(last)) != null) {
+			last = entry.getKey();
+			readyOperations.remove(last);
+			Operation op = entry.getValue();
 			if(!transactions.containsKey(op.transactionID)) {
 				continue;
 			}
@@ -229,34 +427,182 @@ public class TransactionManager {
 				//System.out.println("DEBUG: About to abort so ignore this command when execution");
 				continue;
 			}
-			if(op.operationType == Operation.OperationType.READ) {
-				if(!Read(op)){
-					leftOperations.add(op);
+			if(transactions.get(op.transactionID).committing) {
+				// what was still blocked at its end is dropped, like after a commit
+				continue;
+			}
+			boolean done = Attempt(op);
+			while(!done && deadlockPolicy != DeadlockPolicy.DETECT && Prevent(op)) {
+				// the wounded released their locks, a wake-up sent before the op was parked would be lost
+				done = Attempt(op);
+			}
+			if(!done) {
+				if(!transactions.get(op.transactionID).willAbort) {
+					Park(op);
 				}
-			} else if(op.operationType == Operation.OperationType.READONLY) {
-				if(!ReadOnly(op)) {
-					leftOperations.add(op);
+			} else if(observer != null) {
+				observer.OperationCompleted(op);
+			}
+		}
+	}
+	
+	private boolean Attempt(Operation op) {
+		if(op.operationType == Operation.OperationType.READ) {
+			if(concurrency == ConcurrencyControl.OPTIMISTIC) {
+				return ReadOptimistic(op);
+			}
+			return concurrency == ConcurrencyControl.SNAPSHOT ? ReadSnapshot(op) : Read(op);
+		} else if(op.operationType == Operation.OperationType.READONLY) {
+			return ReadOnly(op);
+		} else if(op.operationType == Operation.OperationType.SCAN) {
+			return Scan(op);
+		} else if(op.operationType == Operation.OperationType.MREAD) {
+			return ReadBatch(op);
+		} else if(op.operationType == Operation.OperationType.MWRITE) {
+			return WriteBatch(op);
+		}
+		return concurrency == ConcurrencyControl.LOCKING ? Write(op) : Buffer(op);
+	}
+	
+	private boolean Prevent(Operation op) {
+		if(op.operationType == Operation.OperationType.READONLY) {
+			// read-only transactions take no locks, nobody waits for them
+			return false;
+		}
+		Transaction ts = transactions.get(op.transactionID);
+		boolean wide = Wide(op);
+		int last = wide ? op.lastVariableID : op.variableID;
+		int sites = 0;
+		if(wide) {
+			// a scan or a batch may wait on any site, what it waits for lies between its smallest and largest variable
+			for(int siteID = 1; siteID <= placement.siteCount; siteID++) {
+				siteBuffer[sites++] = siteID;
+			}
+		} else {
+			for(int k = placement.Start(op.variableID); k < placement.End(op.variableID); k++) {
+				siteBuffer[sites++] = placement.SiteAt(k);
+			}
+		}
+		boolean wounded = false;
+		for(int s = 0; s < sites; s++) {
+			int siteID = siteBuffer[s];
+			if(!siteStatus[siteID]) {
+				continue;
+			}
+			int count = DM[siteID].Blockers(op.transactionID, op.variableID, last, blockerBuffer);
+			if(count > blockerBuffer.length) {
+				blockerBuffer = new int[Integer.highestOneBit(count) << 1];
+				count = DM[siteID].Blockers(op.transactionID, op.variableID, last, blockerBuffer);
+			}
+			for(int i = 0; i < Math.min(count, blockerBuffer.length); i++) {
+				int blockerID = blockerBuffer[i];
+				Transaction blocker = transactions.get(blockerID);
+				if(blocker == null || blocker.willAbort) {
+					continue;
 				}
-			} else {
-				if(!Write(op)) {
-					leftOperations.add(op);
+				boolean older = blocker.getStartTime() < ts.getStartTime()
+						|| (blocker.getStartTime() == ts.getStartTime() && blockerID < op.transactionID);
+				if(deadlockPolicy == DeadlockPolicy.WAITDIE) {
+					if(older) {
+						Abort(op.transactionID, Transaction.AbortCause.PREVENTION);
+						prevented = true;
+						return false;
+					}
+				} else if(!older && !blocker.committing) {
+					// a member of the group waits for nothing and is released when the group goes out
+					Abort(blockerID, Transaction.AbortCause.PREVENTION);
+					prevented = true;
+					wounded = true;
 				}
 			}
 		}
-		pendingOperations = leftOperations;
+		return wounded;
+	}
+	
+	private void Enqueue(Operation op) {
+		op.sequence = sequence++;
+		readyOperations.put(op.sequence, op);
+	}
+	
+	private synchronized void Park(Operation op) {
+		if(Wide(op)) {
+			parkedRanges.add(op);
+			parkedCount++;
+			return;
+		}
+		ArrayList<Operation> parked = parkedOperations.get(op.variableID);
+		if(parked == null) {
+			parked = new ArrayList<Operation>();
+			parkedOperations.put(op.variableID, parked);
+		}
+		parked.add(op);
+		parkedCount++;
+	}
+	
+	// the site actors call back from their own threads, the parked table is only touched under this monitor
+	public synchronized void VariableChanged(int siteID, int variableID) {
+		ArrayList<Operation> parked = parkedOperations.remove(variableID);
+		if(parked != null) {
+			parkedCount -= parked.size();
+			for(Operation op: parked) {
+				readyOperations.put(op.sequence, op);
+			}
+		}
+		if(!parkedRanges.isEmpty()) {
+			WakeRanges(variableID, variableID);
+		}
+	}
+	
+	private static boolean Wide(Operation op) {
+		return op.operationType == Operation.OperationType.SCAN || op.operationType == Operation.OperationType.MREAD
+				|| op.operationType == Operation.OperationType.MWRITE;
+	}
+	
+	private void WakeRanges(int first, int last) {
+		int kept = 0;
+		for(Operation op: parkedRanges) {
+			if(op.variableID <= last && op.lastVariableID >= first) {
+				readyOperations.put(op.sequence, op);
+				parkedCount--;
+			} else {
+				parkedRanges.set(kept++, op);
+			}
+		}
+		parkedRanges.subList(kept, parkedRanges.size()).clear();
+	}
+	
+	public synchronized void SiteChanged(int siteID) {
+		// only parked variables can be affected, no need to walk everything the site holds
+		ArrayList<Integer> affected = new ArrayList<Integer>();
+		for(int variableID: parkedOperations.keySet()) {
+			if(placement.Holds(variableID, siteID)) {
+				affected.add(variableID);
+			}
+		}
+		for(int variableID: affected) {
+			VariableChanged(siteID, variableID);
+		}
+		WakeRanges(1, placement.variableCount);
 	}
 	
 	private void Fail(int siteID) {
 		if (siteStatus[siteID]) {
 			DM[siteID].Fail(this.time);
 			siteStatus[siteID] = false;
+			siteAvailability[siteID].RecordFailure(this.time);
+			for(int k: placement.PositionsAt(siteID)) {
+				readable.Clear(k);
+			}
+			if(catchUp != null) {
+				catchUp.SiteFailed(siteID, this.time);
+			}
 			for(Map.Entry<Integer, Transaction> entry: transactions.entrySet()) {
 				Transaction ts = entry.getValue();
 				int transactionID = entry.getKey();
 				if(!ts.isReadOnly() && !ts.willAbort) {
 					if(ts.visitedSites.contains(siteID)) {
 						//Abort the transactions that has visited the failed site
-						Abort(transactionID);
+						Abort(transactionID, Transaction.AbortCause.SITEFAILURE);
 					}
 				}
 			}
@@ -266,10 +612,24 @@ public class TransactionManager {
 	private void Recover(int siteID) {
 		DM[siteID].Recover(time);
 		siteStatus[siteID] = true;
+		siteAvailability[siteID].RecordRecovery(time);
+		int[] variables = placement.VariablesAt(siteID);
+		int[] positions = placement.PositionsAt(siteID);
+		for(int i = 0; i < positions.length; i++) {
+			// a replicated copy stays unreadable until a write commits to it or catch-up brings it up to date
+			if(placement.IsReplicated(variables[i])) {
+				readable.Clear(positions[i]);
+			} else {
+				readable.Set(positions[i]);
+			}
+		}
+		if(catchUp != null) {
+			catchUp.SiteRecovered(siteID, time);
+		}
 	}
 	
 	private void DumpAll() {
-		for(int i = 1; i <= DataManager.SITECNT; i++) {
+		for(int i = 1; i <= placement.siteCount; i++) {
 			DumpSite(i);
 		}
 	}
@@ -279,18 +639,38 @@ public class TransactionManager {
 	}
 	
 	private void DumpItem(int variableID) {
-		for(int siteID: itemSites.get(variableID)) {
-			DM[siteID].DumpOne(variableID);
+		for(int k = placement.Start(variableID); k < placement.End(variableID); k++) {
+			DM[placement.SiteAt(k)].DumpOne(variableID);
 		}
 	}
 	
-	private void Abort(int transactionID) {
+	private void Abort(int transactionID, Transaction.AbortCause cause) {
 		Transaction ts = transactions.get(transactionID);
 		if(!ts.willAbort) {
-			for(int site:ts.visitedSites) {
-				DM[site].Abort(transactionID);
+			// blocked requests count too, a waitlist entry left behind would block its variable for good
+			int count = 0;
+			for(int site:ts.lockedSites) {
+				siteBuffer[count++] = site;
 			}
+			OnSites(siteBuffer, count, site -> {
+				site.Abort(transactionID);
+				return true;
+			});
+			ReleaseReadLoad(ts);
 			ts.willAbort = true;
+			ts.abortCause = cause;
+			if(cause == Transaction.AbortCause.DEADLOCK) {
+				metrics.deadlockAborts.increment();
+			} else if(cause == Transaction.AbortCause.PREVENTION) {
+				metrics.preventionAborts.increment();
+			} else if(cause == Transaction.AbortCause.VALIDATION) {
+				metrics.validationAborts.increment();
+			} else {
+				metrics.siteFailureAborts.increment();
+			}
+			if(observer != null) {
+				observer.TransactionAborted(transactionID, cause);
+			}
 			//System.out.println("Debug: abort T"+transactionID);
 		}
 	}
@@ -299,154 +679,694 @@ public class TransactionManager {
 		// assuming transactionID increase 1 each time from 1
 		Transaction ts = new Transaction(time, isRonly);
 		transactions.put(transactionID, ts);
+		if(Snapshot(ts)) {
+			Integer count = readOnlyStarts.get(time);
+			readOnlyStarts.put(time, count == null ? 1 : count + 1);
+		}
 	}
 	
 	private void Finish(int transactionID) {
 		Transaction ts = transactions.get(transactionID);
-		if(ts.willAbort) {
-			try {
-				this.writer.write("T"+transactionID+" aborts");
-				this.writer.newLine();
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+		if(concurrency != ConcurrencyControl.LOCKING && !ts.isReadOnly() && !ts.willAbort && !(Validate(ts) && Install(transactionID, ts))) {
+			Abort(transactionID, Transaction.AbortCause.VALIDATION);
+		}
+		if(!ts.willAbort && groupCommitWindow > 0) {
+			if(committing.isEmpty()) {
+				groupStart = time;
 			}
+			ts.committing = true;
+			committing.add(transactionID);
+			// its requests still queued will never be used, they must not make anyone wait for it
+			int count = 0;
+			for(int site: ts.lockedSites) {
+				siteBuffer[count++] = site;
+			}
+			OnSites(siteBuffer, count, site -> {
+				site.CancelWaiting(transactionID);
+				return true;
+			});
+			return;
+		}
+		if(ts.willAbort) {
+			writeOutcome(transactionID, " aborts");
 		} else {
-			for(int site: ts.visitedSites) {
-				DM[site].Commit(transactionID, time);
+			int horizon = SnapshotHorizon();
+			int now = time;
+			int count = 0;
+			for(int site: ts.lockedSites) {
+				siteBuffer[count++] = site;
 			}
+			OnSites(siteBuffer, count, site -> {
+				if(ts.visitedSites.contains(site.SiteID())) {
+					site.SetSnapshotHorizon(horizon);
+					site.Commit(transactionID, now);
+				} else {
+					// a request still queued where another replica served it
+					site.Abort(transactionID);
+				}
+				return true;
+			});
+			for(int i = 0; i < ts.writtenPositions.Size(); i++) {
+				readable.Set(ts.writtenPositions.Get(i));
+			}
+			RecordCommits(ts, now, horizon);
+			ReleaseReadLoad(ts);
 			//System.out.println("T"+transactionID+" commits");
-			writeLine("T"+transactionID+" commits");
+			writeOutcome(transactionID, " commits");
+		}
+		Complete(transactionID, ts);
+	}
+	
+	private void CommitGroup() {
+		if(committing.isEmpty()) {
+			return;
+		}
+		int horizon = SnapshotHorizon();
+		int now = time;
+		int[][] members = new int[placement.siteCount+1][];
+		int[] memberCount = new int[placement.siteCount+1];
+		int count = 0;
+		for(int transactionID: committing) {
+			Transaction ts = transactions.get(transactionID);
+			if(ts.willAbort) {
+				continue;
+			}
+			for(int site: ts.lockedSites) {
+				if(members[site] == null) {
+					members[site] = new int[committing.size()];
+					siteBuffer[count++] = site;
+				}
+				// a member that only has requests queued here releases them, it wrote nothing here
+				members[site][memberCount[site]++] = transactionID;
+			}
+		}
+		OnSites(siteBuffer, count, site -> {
+			site.SetSnapshotHorizon(horizon);
+			site.CommitGroup(members[site.SiteID()], memberCount[site.SiteID()], now);
+			return true;
+		});
+		metrics.groupCommitSize.Record(committing.size());
+		for(int transactionID: committing) {
+			Transaction ts = transactions.get(transactionID);
+			if(ts.willAbort) {
+				writeOutcome(transactionID, " aborts");
+			} else {
+				for(int i = 0; i < ts.writtenPositions.Size(); i++) {
+					readable.Set(ts.writtenPositions.Get(i));
+				}
+				RecordCommits(ts, now, horizon);
+				ReleaseReadLoad(ts);
+				writeOutcome(transactionID, " commits");
+			}
+			Complete(transactionID, ts);
+		}
+		committing.clear();
+	}
+	
+	// the transaction is done either way
+	private void Complete(int transactionID, Transaction ts) {
+		if(observer != null) {
+			observer.TransactionFinished(transactionID, ts, !ts.willAbort, time);
+		}
+		if(Snapshot(ts)) {
+			int count = readOnlyStarts.get(ts.getStartTime());
+			if(count == 1) {
+				readOnlyStarts.remove(ts.getStartTime());
+			} else {
+				readOnlyStarts.put(ts.getStartTime(), count - 1);
+			}
 		}
 		transactions.remove(transactionID);
 	}
 	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static CompletableFuture<Boolean>[] NewReplies(int count) {
+		return new CompletableFuture[count];
+	}
+	
+	private boolean Snapshot(Transaction ts) {
+		return ts.isReadOnly() || concurrency == ConcurrencyControl.SNAPSHOT;
+	}
+	
+	// versions older than what the oldest running snapshot can see are garbage
+	private int SnapshotHorizon() {
+		if(readOnlyStarts.isEmpty()) {
+			return time;
+		}
+		return readOnlyStarts.firstKey();
+	}
+	
 	private boolean Read(Operation op) {
 		int variableID = op.variableID;
 		int transactionID = op.transactionID;
-		for(int siteID: itemSites.get(variableID)) {
-			if(!siteStatus[siteID]) {
-				continue;
+		Transaction ts = transactions.get(transactionID);
+		int count = 0;
+		for(int k = placement.Start(variableID); k < placement.End(variableID); k++) {
+			int siteID = placement.SiteAt(k);
+			// a down site or a stale copy would refuse the read lock anyway
+			if(siteStatus[siteID] && readable.IsSet(k)) {
+				siteBuffer[count++] = siteID;
 			}
+		}
+		OrderReplicas(variableID, count);
+		for(int i = 0; i < count; i++) {
+			int siteID = siteBuffer[i];
+			ts.lockedSites.add(siteID);
 			if(DM[siteID].AcquireReadLock(transactionID, variableID)) {
 				OperationResponse or = DM[siteID].Read(op);
 				if(or.success) {
-					transactions.get(transactionID).visitedSites.add(siteID);
+					ts.visitedSites.add(siteID);
+					if(ts.readSites.Add(siteID)) {
+						siteReadLoad[siteID]++;
+					}
 					//System.out.printf("x%d: %d\n", op.variableID, or.readResult);
-					writeLine(String.format("x%d: %d", op.variableID, or.readResult));
+					writeRead(op.variableID, or.readResult);
 					return true;
 				} else {
 					//System.out.println("DEBUG: supposed to read after having read lock");
 				}
 			}
+			metrics.readProbesRefused.increment();
 		}
 		return false;
 	}
 	
 	private boolean ReadOnly(Operation op) {
-		for(int siteID: itemSites.get(op.variableID)) {
+		// a live replica that stayed up from the last commit it got to the snapshot holds the version the
+		// snapshot reads, so it can serve the read without probing the sites that failed in between
+		boolean replicated = placement.IsReplicated(op.variableID);
+		int count = 0;
+		for(int k = placement.Start(op.variableID); k < placement.End(op.variableID); k++) {
+			int siteID = placement.SiteAt(k);
+			if(siteStatus[siteID] && (!replicated || !siteAvailability[siteID].FailedBetween(LastCommit(k, op.timestamp), op.timestamp))) {
+				siteBuffer[count++] = siteID;
+			}
+		}
+		if(count > 0) {
+			OrderReplicas(op.variableID, count);
+			OperationResponse or = DM[siteBuffer[0]].ReadOnly(op);
+			if(or.success) {
+				writeRead(op.variableID, or.readResult);
+				return true;
+			}
+			metrics.readProbesRefused.increment();
+		}
+		for(int k = placement.Start(op.variableID); k < placement.End(op.variableID); k++) {
+			int siteID = placement.SiteAt(k);
 			if(!siteStatus[siteID]) {
 				continue;
 			}
 			OperationResponse or = DM[siteID].ReadOnly(op);
 			if(or.success) {
 				//System.out.printf("x%d: %d\n", op.variableID, or.readResult);
-				writeLine(String.format("x%d: %d", op.variableID, or.readResult));
+				writeRead(op.variableID, or.readResult);
 				return true;
 			}
+			metrics.readProbesRefused.increment();
 		}
 		return false;
 	}
 	
-	private boolean Write(Operation op) {
-		int variableID = op.variableID;
-		int transactionID = op.transactionID;
-		boolean success = true;
-		for(int siteID: itemSites.get(variableID)) {
+	private boolean ReadOptimistic(Operation op) {
+		Transaction ts = transactions.get(op.transactionID);
+		Integer own = ts.writeSet.get(op.variableID);
+		if(own != null) {
+			writeRead(op.variableID, own);
+			return true;
+		}
+		int count = 0;
+		for(int k = placement.Start(op.variableID); k < placement.End(op.variableID); k++) {
+			int siteID = placement.SiteAt(k);
+			if(siteStatus[siteID] && readable.IsSet(k)) {
+				siteBuffer[count++] = siteID;
+			}
+		}
+		OrderReplicas(op.variableID, count);
+		for(int i = 0; i < count; i++) {
+			OperationResponse or = DM[siteBuffer[i]].ReadCommitted(op);
+			if(or.success) {
+				ts.readSet.Add(op.variableID);
+				writeRead(op.variableID, or.readResult);
+				return true;
+			}
+			metrics.readProbesRefused.increment();
+		}
+		return false;
+	}
+	
+	private boolean ReadSnapshot(Operation op) {
+		Integer own = transactions.get(op.transactionID).writeSet.get(op.variableID);
+		if(own != null) {
+			writeRead(op.variableID, own);
+			return true;
+		}
+		if(ReadOnly(op)) {
+			return true;
+		}
+		for(int k = placement.Start(op.variableID); k < placement.End(op.variableID); k++) {
+			int siteID = placement.SiteAt(k);
+			if(!siteStatus[siteID] && !siteAvailability[siteID].FailedBetween(LastCommit(k, op.timestamp), op.timestamp)) {
+				// it holds the version of the snapshot, it can serve the read once it is back
+				return false;
+			}
+		}
+		// no copy will have the snapshot, waiting would hold the transaction (and its client) for good
+		Abort(op.transactionID, Transaction.AbortCause.SITEFAILURE);
+		return false;
+	}
+	
+	private boolean Scan(Operation op) {
+		Transaction ts = transactions.get(op.transactionID);
+		int first = op.variableID;
+		int width = op.lastVariableID - first + 1;
+		boolean[] covered = new boolean[width];
+		int[] values = new int[width];
+		int[] siteVariables = new int[width];
+		int[] siteValues = new int[width];
+		int remaining = width;
+		for(int siteID = 1; siteID <= placement.siteCount && remaining > 0; siteID++) {
 			if(!siteStatus[siteID]) {
 				continue;
 			}
-			success &= DM[siteID].AcquireWriteLock(transactionID, variableID);
+			int siteEnd = placement.SiteEnd(siteID);
+			boolean useful = false;
+			for(int i = placement.SiteFrom(siteID, first); i < siteEnd && placement.SiteVariableAt(i) <= op.lastVariableID && !useful; i++) {
+				// a down site or a stale copy would refuse it anyway
+				useful = !covered[placement.SiteVariableAt(i) - first] && readable.IsSet(placement.SitePositionAt(i));
+			}
+			if(!useful) {
+				continue;
+			}
+			ts.lockedSites.add(siteID);
+			if(!DM[siteID].AcquireRangeReadLock(op.transactionID, first, op.lastVariableID)) {
+				// the locks it did get are still good for what they cover
+				metrics.readProbesRefused.increment();
+			}
+			int count = DM[siteID].ReadRange(op.transactionID, first, op.lastVariableID, siteVariables, siteValues);
+			boolean used = false;
+			for(int i = 0; i < count; i++) {
+				int offset = siteVariables[i] - first;
+				if(!covered[offset] && readable.IsSet(placement.Position(siteVariables[i], siteID))) {
+					covered[offset] = true;
+					values[offset] = siteValues[i];
+					remaining--;
+					used = true;
+				}
+			}
+			if(used) {
+				ts.visitedSites.add(siteID);
+				if(ts.readSites.Add(siteID)) {
+					siteReadLoad[siteID]++;
+				}
+			}
+		}
+		if(remaining > 0) {
+			return false;
+		}
+		for(int i = 0; i < width; i++) {
+			writeRead(first + i, values[i]);
+		}
+		return true;
+	}
+	
+	private boolean ReadBatch(Operation op) {
+		Transaction ts = transactions.get(op.transactionID);
+		int width = op.variableIDs.length;
+		// the copies each variable is tried at, in the order of the read policy like Read
+		int[][] replicas = new int[width][];
+		int rounds = 0;
+		for(int i = 0; i < width; i++) {
+			int count = 0;
+			for(int k = placement.Start(op.variableIDs[i]); k < placement.End(op.variableIDs[i]); k++) {
+				int siteID = placement.SiteAt(k);
+				// a down site or a stale copy would refuse it anyway
+				if(siteStatus[siteID] && readable.IsSet(k)) {
+					siteBuffer[count++] = siteID;
+				}
+			}
+			OrderReplicas(op.variableIDs[i], count);
+			replicas[i] = Arrays.copyOf(siteBuffer, count);
+			rounds = Math.max(rounds, count);
+		}
+		boolean[] covered = new boolean[width];
+		int[] values = new int[width];
+		int[][] batch = new int[placement.siteCount+1][];
+		int[][] index = new int[placement.siteCount+1][];
+		int[] batchCount = new int[placement.siteCount+1];
+		int[] read = new int[width];
+		int[] siteValues = new int[width];
+		int remaining = width;
+		// round r sends every variable not read yet to its r-th choice, one call per site
+		for(int r = 0; r < rounds && remaining > 0; r++) {
+			Arrays.fill(batchCount, 0);
+			for(int i = 0; i < width; i++) {
+				if(covered[i] || r >= replicas[i].length) {
+					continue;
+				}
+				int siteID = replicas[i][r];
+				if(batch[siteID] == null) {
+					batch[siteID] = new int[width];
+					index[siteID] = new int[width];
+				}
+				index[siteID][batchCount[siteID]] = i;
+				batch[siteID][batchCount[siteID]++] = op.variableIDs[i];
+			}
+			for(int siteID = 1; siteID <= placement.siteCount; siteID++) {
+				int count = batchCount[siteID];
+				if(count == 0) {
+					continue;
+				}
+				ts.lockedSites.add(siteID);
+				int done = DM[siteID].ReadBatch(op.transactionID, batch[siteID], count, read, siteValues);
+				metrics.readProbesRefused.add(count - Math.max(done, 0));
+				for(int j = 0; j < done; j++) {
+					int i = index[siteID][read[j]];
+					covered[i] = true;
+					values[i] = siteValues[j];
+					remaining--;
+				}
+				if(done > 0) {
+					ts.visitedSites.add(siteID);
+					if(ts.readSites.Add(siteID)) {
+						siteReadLoad[siteID]++;
+					}
+				}
+			}
+		}
+		if(remaining > 0) {
+			return false;
 		}
-		if (success) {
-			for(int siteID: itemSites.get(variableID)) {
+		for(int i = 0; i < width; i++) {
+			writeRead(op.variableIDs[i], values[i]);
+		}
+		return true;
+	}
+	
+	private boolean WriteBatch(Operation op) {
+		int transactionID = op.transactionID;
+		Transaction ts = transactions.get(transactionID);
+		int width = op.variableIDs.length;
+		int[][] batch = new int[placement.siteCount+1][];
+		int[][] batchValues = new int[placement.siteCount+1][];
+		int[][] batchPositions = new int[placement.siteCount+1][];
+		int[] batchCount = new int[placement.siteCount+1];
+		// like ReadBatch, only the copies of each variable are visited
+		for(int i = 0; i < width; i++) {
+			for(int k = placement.Start(op.variableIDs[i]); k < placement.End(op.variableIDs[i]); k++) {
+				int siteID = placement.SiteAt(k);
 				if(!siteStatus[siteID]) {
 					continue;
 				}
-				DM[siteID].Write(op);
-				transactions.get(transactionID).visitedSites.add(siteID);
+				if(batch[siteID] == null) {
+					batch[siteID] = new int[width];
+					batchValues[siteID] = new int[width];
+					batchPositions[siteID] = new int[width];
+				}
+				batch[siteID][batchCount[siteID]] = op.variableIDs[i];
+				batchPositions[siteID][batchCount[siteID]] = k;
+				batchValues[siteID][batchCount[siteID]++] = op.values[i];
+			}
+		}
+		int count = 0;
+		for(int siteID = 1; siteID <= placement.siteCount; siteID++) {
+			if(batchCount[siteID] > 0) {
+				ts.lockedSites.add(siteID);
+				siteBuffer[count++] = siteID;
+			}
+		}
+		if(OnSites(siteBuffer, count, site -> site.WriteBatch(transactionID, batch[site.SiteID()], batchValues[site.SiteID()], batchCount[site.SiteID()]))) {
+			for(int i = 0; i < count; i++) {
+				int siteID = siteBuffer[i];
+				ts.visitedSites.add(siteID);
+				for(int j = 0; j < batchCount[siteID]; j++) {
+					// the copy is readable once the transaction commits
+					ts.writtenPositions.Add(batchPositions[siteID][j]);
+				}
 			}
 			return true;
-		} // TODO: suppose to release all the write locks assigned here
+		}
+		// all or nothing like Write: a refusing site kept nothing but its queued requests, the others take their part back
+		int applied = 0;
+		for(int i = 0; i < count; i++) {
+			if(siteResults[i]) {
+				siteBuffer[applied++] = siteBuffer[i];
+			}
+		}
+		OnSites(siteBuffer, applied, site -> {
+			site.UndoBatch(transactionID);
+			return true;
+		});
 		return false;
 	}
 	
-	private boolean hasCycle(int cur, int root, HashMap<Integer, HashSet<Integer>> graph, HashSet<Integer> path) {
-		path.add(cur);
-		if(!graph.containsKey(cur)){
-			return false;
+	private boolean Buffer(Operation op) {
+		transactions.get(op.transactionID).writeSet.put(op.variableID, op.valueToWrite);
+		return true;
+	}
+	
+	private boolean Validate(Transaction ts) {
+		if(concurrency == ConcurrencyControl.SNAPSHOT) {
+			for(int variableID: ts.writeSet.keySet()) {
+				if(CommittedSince(variableID, ts.getStartTime())) {
+					return false;
+				}
+			}
+			return true;
+		}
+		for(int i = 0; i < ts.readSet.Size(); i++) {
+			if(CommittedSince(ts.readSet.Get(i), ts.getStartTime())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private boolean CommittedSince(int variableID, int time) {
+		int newer = -1;
+		for(int k = placement.Start(variableID); k < placement.End(variableID) && newer < 0; k++) {
+			int siteID = placement.SiteAt(k);
+			if(siteStatus[siteID] && readable.IsSet(k)) {
+				newer = DM[siteID].ExportVersions(variableID, time, 1, versionBuffer, versionBuffer);
+			}
+		}
+		return newer != 0;
+	}
+	
+	private boolean Install(int transactionID, Transaction ts) {
+		for(Map.Entry<Integer, Integer> write: ts.writeSet.entrySet()) {
+			Operation op = new Operation(transactionID, write.getKey(), Operation.OperationType.WRITE, write.getValue(), ts.getStartTime());
+			if(!Write(op)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	// put the count candidate sites in siteBuffer in the order the read policy tries them
+	private void OrderReplicas(int variableID, int count) {
+		if(count < 2 || readPolicy == ReadPolicy.FIRST) {
+			return;
+		}
+		if(readPolicy == ReadPolicy.ROUNDROBIN) {
+			int first = nextReplica[variableID]++ % count;
+			for(int i = 0; i < count; i++) {
+				positionBuffer[i] = siteBuffer[(first + i) % count];
+			}
+			System.arraycopy(positionBuffer, 0, siteBuffer, 0, count);
+			return;
+		}
+		// a handful of replicas, insertion sort keeps equally loaded sites in site order
+		for(int i = 1; i < count; i++) {
+			int siteID = siteBuffer[i];
+			int j = i - 1;
+			while(j >= 0 && siteReadLoad[siteBuffer[j]] > siteReadLoad[siteID]) {
+				siteBuffer[j + 1] = siteBuffer[j];
+				j--;
+			}
+			siteBuffer[j + 1] = siteID;
 		}
-		for(int child:graph.get(cur)) {
-			if(child == root) {
+	}
+	
+	private void RecordCommits(Transaction ts, int now, int horizon) {
+		for(int i = 0; i < ts.writtenPositions.Size(); i++) {
+			int k = ts.writtenPositions.Get(i);
+			int[] times = copyCommits[k];
+			int count = copyCommitCount[k];
+			// like the version chains, keep the latest time at or before the horizon and everything after it
+			int drop = 0;
+			while(drop + 1 < count && times[drop + 1] <= horizon) {
+				drop++;
+			}
+			if(drop > 0) {
+				System.arraycopy(times, drop, times, 0, count - drop);
+				count -= drop;
+			}
+			if(times == null) {
+				times = copyCommits[k] = new int[2];
+			} else if(count == times.length) {
+				times = copyCommits[k] = Arrays.copyOf(times, count * 2);
+			}
+			times[count++] = now;
+			copyCommitCount[k] = count;
+		}
+	}
+	
+	private int LastCommit(int position, int timestamp) {
+		int[] times = copyCommits[position];
+		int low = 0;
+		int high = copyCommitCount[position] - 1;
+		int found = -1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			if(times[middle] <= timestamp) {
+				found = times[middle];
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return found;
+	}
+	
+	private void ReleaseReadLoad(Transaction ts) {
+		for(int i = 0; i < ts.readSites.Size(); i++) {
+			siteReadLoad[ts.readSites.Get(i)]--;
+		}
+		ts.readSites.Clear();
+	}
+	
+	private boolean Write(Operation op) {
+		int variableID = op.variableID;
+		int transactionID = op.transactionID;
+		Transaction ts = transactions.get(transactionID);
+		int count = 0;
+		for(int k = placement.Start(variableID); k < placement.End(variableID); k++) {
+			int siteID = placement.SiteAt(k);
+			if(!siteStatus[siteID]) {
+				continue;
+			}
+			ts.lockedSites.add(siteID);
+			positionBuffer[count] = k;
+			siteBuffer[count++] = siteID;
+		}
+		if (OnSites(siteBuffer, count, site -> site.AcquireWriteLock(transactionID, variableID))) {
+			OnSites(siteBuffer, count, site -> {
+				site.Write(op);
 				return true;
+			});
+			for(int i = 0; i < count; i++) {
+				ts.visitedSites.add(siteBuffer[i]);
+				// the copy is readable once the transaction commits
+				ts.writtenPositions.Add(positionBuffer[i]);
 			}
-			if(!path.contains(child)) {
-				if(hasCycle(child, root, graph, path)) {
-					return true;
-				}
+			return true;
+		}
+		// all or nothing: give back what this attempt got, the write only stays queued where it was refused
+		int granted = 0;
+		for(int i = 0; i < count; i++) {
+			if(siteResults[i]) {
+				siteBuffer[granted++] = siteBuffer[i];
 			}
 		}
+		OnSites(siteBuffer, granted, site -> {
+			site.RollbackWriteLock(transactionID, variableID);
+			return true;
+		});
 		return false;
 	}
 	
-	private boolean DetectDeadLock() {
-		// combine waiting graphs of the sites into one graph
-		HashMap<Integer, HashSet<Integer>> waitGraph = new HashMap<Integer, HashSet<Integer>>();
-		for (int i = 1; i <= DataManager.SITECNT; i++) {
-			HashMap<Integer, HashSet<Integer>> graph = DM[i].GenWaitGraph();
-			for(Map.Entry<Integer, HashSet<Integer>> entry: graph.entrySet()) {
-				for(int child:entry.getValue()) {
-					if(!waitGraph.containsKey(entry.getKey())){
-						waitGraph.put(entry.getKey(), new HashSet<Integer>());
-					}
-					waitGraph.get(entry.getKey()).add(child);
-				}
+	// every listed site gets the call (no short cut on a false result), in parallel when the site actors run;
+	// the result of each site is left in siteResults
+	private boolean OnSites(int[] sites, int count, SiteActor.Call call) {
+		boolean all = true;
+		if(actors == null || count == 1) {
+			// nothing to overlap for a single site, and every earlier request to it was already joined
+			for(int i = 0; i < count; i++) {
+				siteResults[i] = call.Apply(DM[sites[i]]);
+				all &= siteResults[i];
 			}
+			return all;
 		}
-		
-		if(waitGraph.isEmpty()) {
+		for(int i = 0; i < count; i++) {
+			replies[i] = actors[sites[i]].Send(call);
+		}
+		for(int i = 0; i < count; i++) {
+			siteResults[i] = SiteActor.Join(replies[i]);
+			all &= siteResults[i];
+			replies[i] = null;
+		}
+		return all;
+	}
+	
+	public void StartActors() {
+		actors = new SiteActor[placement.siteCount+1];
+		for(int i = 1; i <= placement.siteCount; i++) {
+			actors[i] = new SiteActor(DM[i]);
+		}
+	}
+	
+	public void EnableCatchUp(int batch) {
+		catchUp = new CatchUp(DM, placement, batch, metrics, readable);
+	}
+	
+	public void SetDeadlockPolicy(DeadlockPolicy policy) {
+		deadlockPolicy = policy;
+		for(int i = 1; i <= placement.siteCount; i++) {
+			DM[i].Attach(writer, this, policy == DeadlockPolicy.DETECT ? waitGraph : null);
+		}
+	}
+	
+	public void StopActors() {
+		if(actors != null) {
+			for(int i = 1; i <= placement.siteCount; i++) {
+				actors[i].Stop();
+			}
+			actors = null;
+		}
+	}
+	
+	boolean DetectDeadLock() {
+		// the graph is maintained by the sites as their waitlists change, only rerun Tarjan when it moved
+		if(waitGraph.Version() != checkedVersion) {
+			cycleNodes = waitGraph.CycleNodes();
+			checkedVersion = waitGraph.Version();
+		}
+		if(cycleNodes.isEmpty()) {
 			return false;
 		}
 		
 		// find the youngest transaction in any cycles
 		int youngestTime = -1;
 		int abortID = -1;
-		for(Map.Entry<Integer, HashSet<Integer>> entry: waitGraph.entrySet()) {
-			int transID = entry.getKey();
-			int startTime = transactions.get(transID).getStartTime();
-			if(hasCycle(transID, transID, waitGraph, new HashSet<Integer>())){
-				if(youngestTime < startTime) {
-					youngestTime = startTime;
-					abortID = transID;
-				}
+		for(int transID: cycleNodes) {
+			Transaction ts = transactions.get(transID);
+			if(ts == null || ts.committing) {
+				continue;
+			}
+			if(youngestTime < ts.getStartTime()) {
+				youngestTime = ts.getStartTime();
+				abortID = transID;
 			}
 		}
 		if(abortID != -1) {
-			Abort(abortID);
+			Abort(abortID, Transaction.AbortCause.DEADLOCK);
 			return true;
 		}
 		
 		return false;
 	}
 	
-	private void writeLine(String line) {
-		try {
-			this.writer.write(line);
-			this.writer.newLine();
-			this.writer.flush();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+	private void writeRead(int variableID, int value) {
+		writer.Text("x");
+		writer.Int(variableID);
+		writer.Text(": ");
+		writer.Int(value);
+		writer.NewLine();
+	}
+	
+	private void writeOutcome(int transactionID, String outcome) {
+		writer.Text("T");
+		writer.Int(transactionID);
+		writer.Line(outcome);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+/*
+ * Date: 2026-10-17
+ * Description: callback from the TransactionManager to a driver that issues commands itself (LoadDriver)
+ *
+ * 1. Name: OperationCompleted
+ * 	  Input: operation
+ *    Description: a read or write went through, the issuing client may send its next command
+ *
+ * 2. Name: TransactionAborted
+ * 	  Input: transactionID, cause
+ *    Description: the transaction will abort, its queued operations are dropped and only end() is left to send
+ *
+ * 3. Name: TransactionFinished
+ * 	  Input: transactionID, transaction, committed or not, time
+ * */
+public interface TransactionObserver {
+	public void OperationCompleted(Operation op);
+
+	public void TransactionAborted(int transactionID, Transaction.AbortCause cause);
+
+	public void TransactionFinished(int transactionID, Transaction transaction, boolean committed, int time);
+}
@@ -0,0 +1,110 @@
+import java.util.Arrays;
+
+/*
+ * Date: 2026-10-17
+ * Description: committed versions of one variable on one site, oldest first in two parallel int arrays.
+ *    Commit times only grow, so new versions are appended and snapshot lookups are binary searches.
+ *
+ * 1. Name: Append
+ * 	  Input: value, commitTime
+ *    Description: add the newest version
+ *
+ * 2. Name: Find
+ * 	  Input: timestamp
+ *    Output: position of the newest version committed at or before timestamp, -1 if none
+ *
+ * 3. Name: Prune
+ * 	  Input: horizon, the start time of the oldest snapshot that may still be read
+ *    Description: drop the versions no snapshot at or after horizon can see, the newest version
+ *    committed at or before horizon is kept
+ *
+ * 4. Name: After / End
+ * 	  Input: timestamp / none
+ *    Output: position of the oldest version committed after timestamp / position after the newest version,
+ *    so the versions newer than a cursor are After(cursor) <= k < End()
+ * */
+public class VersionChain {
+	private int[] commitTimes;
+	private int[] values;
+	private int start; // first live position, everything before it was pruned
+	private int end;
+
+	public VersionChain(int value, int commitTime) {
+		this.commitTimes = new int[2];
+		this.values = new int[2];
+		this.start = 0;
+		this.end = 0;
+		Append(value, commitTime);
+	}
+
+	public void Append(int value, int commitTime) {
+		if (this.end == this.values.length) {
+			if (this.start > 0) {
+				// reuse the pruned prefix before growing
+				System.arraycopy(this.commitTimes, this.start, this.commitTimes, 0, this.end - this.start);
+				System.arraycopy(this.values, this.start, this.values, 0, this.end - this.start);
+				this.end -= this.start;
+				this.start = 0;
+			}
+			if (this.end == this.values.length) {
+				this.commitTimes = Arrays.copyOf(this.commitTimes, this.end * 2);
+				this.values = Arrays.copyOf(this.values, this.end * 2);
+			}
+		}
+		this.commitTimes[this.end] = commitTime;
+		this.values[this.end] = value;
+		this.end++;
+	}
+
+	public int Find(int timestamp) {
+		int lo = this.start;
+		int hi = this.end - 1;
+		int found = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.commitTimes[mid] <= timestamp) {
+				found = mid;
+				lo = mid + 1;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		return found;
+	}
+
+	public void Prune(int horizon) {
+		int keep = Find(horizon);
+		if (keep > this.start) {
+			this.start = keep;
+		}
+	}
+
+	public int After(int timestamp) {
+		return Math.max(Find(timestamp) + 1, this.start);
+	}
+
+	public int End() {
+		return this.end;
+	}
+
+	public int ValueAt(int position) {
+		return this.values[position];
+	}
+
+	public int CommitTimeAt(int position) {
+		return this.commitTimes[position];
+	}
+
+	public int LatestValue() {
+		return this.values[this.end - 1];
+	}
+
+	public int LatestCommitTime() {
+		return this.commitTimes[this.end - 1];
+	}
+
+	public int Depth() {
+		return this.end - this.start;
+	}
+}
@@ -0,0 +1,151 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/*
+ * Date: 2026-10-17
+ * Description: global wait-for graph shared by all the DataManagers, kept up to date edge by edge
+ *
+ * 1. Name: AddEdge / RemoveEdge
+ * 	  Input: waiting transactionID, blocking transactionID
+ *    Description: the same edge can come from several variables and sites, so edges are reference counted
+ *
+ * 2. Name: Version
+ *    Output: counter bumped every time an edge appears or disappears
+ *
+ * 3. Name: CycleNodes
+ *    Output: transactions that lie on some cycle
+ *    Description: one pass of Tarjan's algorithm, a node is on a cycle iff its strongly connected component has more than one node
+ * */
+public class WaitForGraph {
+	private HashMap<Integer, HashMap<Integer, Integer>> edges;
+	private long version;
+
+	public WaitForGraph() {
+		this.edges = new HashMap<Integer, HashMap<Integer, Integer>>();
+		this.version = 0;
+	}
+
+	public synchronized void AddEdge(int from, int to) {
+		HashMap<Integer, Integer> out = this.edges.get(from);
+		if (out == null) {
+			out = new HashMap<Integer, Integer>();
+			this.edges.put(from, out);
+		}
+		Integer count = out.get(to);
+		if (count == null) {
+			out.put(to, 1);
+			this.version++;
+		}
+		else {
+			out.put(to, count + 1);
+		}
+	}
+
+	public synchronized void RemoveEdge(int from, int to) {
+		HashMap<Integer, Integer> out = this.edges.get(from);
+		if (out == null) {
+			return;
+		}
+		Integer count = out.get(to);
+		if (count == null) {
+			return;
+		}
+		if (count == 1) {
+			out.remove(to);
+			if (out.isEmpty()) {
+				this.edges.remove(from);
+			}
+			this.version++;
+		}
+		else {
+			out.put(to, count - 1);
+		}
+	}
+
+	public synchronized long Version() {
+		return this.version;
+	}
+
+	public synchronized HashSet<Integer> CycleNodes() {
+		HashSet<Integer> result = new HashSet<Integer>();
+		HashMap<Integer, Integer> index = new HashMap<Integer, Integer>();
+		HashMap<Integer, Integer> lowlink = new HashMap<Integer, Integer>();
+		HashSet<Integer> onStack = new HashSet<Integer>();
+		ArrayList<Integer> stack = new ArrayList<Integer>();
+		// explicit call stack of (node, iterator over its children) so deep graphs cannot overflow
+		ArrayList<Integer> callNodes = new ArrayList<Integer>();
+		ArrayList<Iterator<Integer>> callChildren = new ArrayList<Iterator<Integer>>();
+		int counter = 0;
+
+		for (int root: this.edges.keySet()) {
+			if (index.containsKey(root)) {
+				continue;
+			}
+			index.put(root, counter);
+			lowlink.put(root, counter);
+			counter++;
+			stack.add(root);
+			onStack.add(root);
+			callNodes.add(root);
+			callChildren.add(Children(root));
+
+			while (callNodes.isEmpty() == false) {
+				int top = callNodes.size() - 1;
+				int node = callNodes.get(top);
+				Iterator<Integer> children = callChildren.get(top);
+				if (children.hasNext()) {
+					int child = children.next();
+					if (index.containsKey(child) == false) {
+						index.put(child, counter);
+						lowlink.put(child, counter);
+						counter++;
+						stack.add(child);
+						onStack.add(child);
+						callNodes.add(child);
+						callChildren.add(Children(child));
+					}
+					else if (onStack.contains(child)) {
+						lowlink.put(node, Math.min(lowlink.get(node), index.get(child)));
+					}
+					continue;
+				}
+
+				callNodes.remove(top);
+				callChildren.remove(top);
+				if (top > 0) {
+					int parent = callNodes.get(top - 1);
+					lowlink.put(parent, Math.min(lowlink.get(parent), lowlink.get(node)));
+				}
+				if (lowlink.get(node).equals(index.get(node))) {
+					int size = 0;
+					int start = stack.size();
+					while (true) {
+						int member = stack.get(--start);
+						size++;
+						if (member == node) {
+							break;
+						}
+					}
+					for (int i = stack.size() - 1; i >= start; i--) {
+						int member = stack.remove(i);
+						onStack.remove(member);
+						if (size > 1) {
+							result.add(member);
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private Iterator<Integer> Children(int node) {
+		HashMap<Integer, Integer> out = this.edges.get(node);
+		if (out == null) {
+			return new HashSet<Integer>().iterator();
+		}
+		return out.keySet().iterator();
+	}
+}
@@ -0,0 +1,233 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+/*
+ * Date: 2026-10-17
+ * Description: write-ahead log of one site, siteN.wal next to a checkpoint siteN.ckpt in the log directory.
+ *    Every record is [length][crc32][type][payload] so a torn tail left by a crash is detected and cut off.
+ *    Positions are logical sequence numbers (LSN) that keep growing across checkpoints.
+ *
+ * 1. Name: WriteAheadLog (constructor)
+ * 	  Input: directory, siteID, checkpointBytes (log size that asks for a checkpoint)
+ *
+ * 2. Name: Replay
+ * 	  Input: Target receiving the recovered state
+ *    Output: number of log records replayed on top of the checkpoint
+ *    Description: load the checkpoint, then apply the log tail in order
+ *
+ * 3. Name: AppendCommit / AppendRecover
+ * 	  Input: commit time and the written variables with their values / none
+ *    Output: LSN at the end of the record
+ *    Description: write the record to the file without forcing it to disk
+ *
+ * 4. Name: Sync
+ * 	  Input: LSN
+ *    Description: return once everything up to LSN is on disk. Group commit: callers queue on the sync
+ *    monitor while one of them forces the file, and the force covers every record appended before it
+ *    started, so followers usually find their record already durable and return without another fsync
+ *
+ * 5. Name: NeedsCheckpoint / Checkpoint
+ * 	  Input: none / every variable of the site with its latest committed value and up-to-date flag
+ *    Description: write the checkpoint to a temporary file, force it, rename it over the old one, then empty the log
+ * */
+public class WriteAheadLog {
+	public interface Target {
+		public void RestoreValue(int variableID, int value, boolean upToDate);
+		public void RestoreRecover();
+	}
+
+	private final static byte COMMIT = 1;
+	private final static byte RECOVER = 2;
+	private final static int HEADER = 9; // length, crc, type
+	private final static int CHECKPOINT_MAGIC = 0x41444243;
+
+	private File logFile;
+	private File checkpointFile;
+	private FileChannel channel;
+	private long checkpointBytes;
+	private ByteBuffer buffer;
+	private CRC32 crc;
+	private final Object appendMonitor = new Object();
+	private final Object syncMonitor = new Object();
+	private long fileStart; // LSN of file position 0
+	private long appendedLSN;
+	private long durableLSN;
+
+	public WriteAheadLog(File directory, int siteID, long checkpointBytes) throws IOException {
+		directory.mkdirs();
+		this.logFile = new File(directory, "site" + siteID + ".wal");
+		this.checkpointFile = new File(directory, "site" + siteID + ".ckpt");
+		this.channel = FileChannel.open(this.logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.checkpointBytes = checkpointBytes;
+		this.buffer = ByteBuffer.allocate(4096);
+		this.crc = new CRC32();
+		this.fileStart = 0;
+		this.appendedLSN = 0;
+		this.durableLSN = 0;
+	}
+
+	public int Replay(Target target) throws IOException {
+		if (this.checkpointFile.exists()) {
+			ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(this.checkpointFile.toPath()));
+			if (in.getInt() != CHECKPOINT_MAGIC) {
+				throw new IOException("bad checkpoint " + this.checkpointFile);
+			}
+			int count = in.getInt();
+			for (int i = 0; i < count; i++) {
+				int variableID = in.getInt();
+				int value = in.getInt();
+				target.RestoreValue(variableID, value, in.get() == 1);
+			}
+		}
+
+		ByteBuffer in = ByteBuffer.allocate((int) this.channel.size());
+		this.channel.read(in, 0);
+		in.flip();
+		int records = 0;
+		while (in.remaining() >= HEADER) {
+			int start = in.position();
+			int length = in.getInt();
+			int checksum = in.getInt();
+			if (length < 1 || length > in.remaining()) {
+				in.position(start);
+				break;
+			}
+			this.crc.reset();
+			this.crc.update(in.array(), in.position(), length);
+			if ((int) this.crc.getValue() != checksum) {
+				in.position(start);
+				break;
+			}
+			byte type = in.get();
+			if (type == COMMIT) {
+				in.getInt(); // commit time, the replayed values become the initial versions of the new run
+				int count = in.getInt();
+				for (int i = 0; i < count; i++) {
+					int variableID = in.getInt();
+					target.RestoreValue(variableID, in.getInt(), true);
+				}
+			} else if (type == RECOVER) {
+				target.RestoreRecover();
+			}
+			records++;
+		}
+		// cut off a torn record left by a crash so new records follow the last good one
+		this.channel.truncate(in.position());
+		this.channel.position(in.position());
+		this.appendedLSN = in.position();
+		this.durableLSN = this.appendedLSN;
+		return records;
+	}
+
+	public long AppendCommit(int timestamp, int[] variables, int[] values, int count) throws IOException {
+		synchronized (this.appendMonitor) {
+			ByteBuffer out = Begin(COMMIT, 8 + count * 8);
+			out.putInt(timestamp);
+			out.putInt(count);
+			for (int i = 0; i < count; i++) {
+				out.putInt(variables[i]);
+				out.putInt(values[i]);
+			}
+			return End(out);
+		}
+	}
+
+	public long AppendRecover() throws IOException {
+		synchronized (this.appendMonitor) {
+			return End(Begin(RECOVER, 0));
+		}
+	}
+
+	public void Sync(long lsn) throws IOException {
+		synchronized (this.syncMonitor) {
+			if (this.durableLSN >= lsn) {
+				return;
+			}
+			long target;
+			synchronized (this.appendMonitor) {
+				target = this.appendedLSN;
+			}
+			this.channel.force(false);
+			this.durableLSN = target;
+		}
+	}
+
+	public boolean NeedsCheckpoint() {
+		synchronized (this.appendMonitor) {
+			return this.appendedLSN - this.fileStart >= this.checkpointBytes;
+		}
+	}
+
+	// the caller must keep the site from committing while the checkpoint is taken
+	public void Checkpoint(int[] variables, int[] values, boolean[] upToDate) throws IOException {
+		ByteBuffer out = ByteBuffer.allocate(8 + variables.length * 9);
+		out.putInt(CHECKPOINT_MAGIC);
+		out.putInt(variables.length);
+		for (int i = 0; i < variables.length; i++) {
+			out.putInt(variables[i]);
+			out.putInt(values[i]);
+			out.put((byte) (upToDate[i] ? 1 : 0));
+		}
+		out.flip();
+		File temporary = new File(this.checkpointFile.getPath() + ".tmp");
+		FileChannel file = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			while (out.hasRemaining()) {
+				file.write(out);
+			}
+			file.force(true);
+		} finally {
+			file.close();
+		}
+		Files.move(temporary.toPath(), this.checkpointFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+		synchronized (this.syncMonitor) {
+			synchronized (this.appendMonitor) {
+				// everything logged so far is in the checkpoint, a crash before the truncate only replays it again
+				this.channel.truncate(0);
+				this.channel.position(0);
+				this.channel.force(true);
+				this.fileStart = this.appendedLSN;
+				this.durableLSN = this.appendedLSN;
+			}
+		}
+	}
+
+	public void Close() throws IOException {
+		synchronized (this.syncMonitor) {
+			this.channel.force(true);
+			this.channel.close();
+		}
+	}
+
+	private ByteBuffer Begin(byte type, int payload) {
+		int size = HEADER + payload;
+		if (this.buffer.capacity() < size) {
+			this.buffer = ByteBuffer.allocate(Math.max(size, this.buffer.capacity() * 2));
+		}
+		this.buffer.clear();
+		this.buffer.position(8);
+		this.buffer.put(type);
+		return this.buffer;
+	}
+
+	private long End(ByteBuffer out) throws IOException {
+		int length = out.position() - 8;
+		this.crc.reset();
+		this.crc.update(out.array(), 8, length);
+		out.putInt(0, length);
+		out.putInt(4, (int) this.crc.getValue());
+		out.flip();
+		while (out.hasRemaining()) {
+			this.channel.write(out);
+		}
+		this.appendedLSN += length + 8;
+		return this.appendedLSN;
+	}
+}
@@ -1,8 +1,13 @@
 #!/bin/bash
 
-for i in 1 2 3 3.5 3.7 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20 21;
+for i in 1 2 3 3.5 3.7 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20 21 22 23 24 25 26 27 28 29 30 31 32 33 34 35 36 37;
 do
     echo "Test $i begin"
-    java -jar ../adb.jar Test$i Output$i
+    # ConfigN holds the adb.* settings a test runs under, if it needs any
+    if [ -f Config$i ]; then
+        java -Dadb.config=Config$i -jar ../adb.jar Test$i Output$i
+    else
+        java -jar ../adb.jar Test$i Output$i
+    fi
     echo "Test $i done"
 done
\ No newline at end of file